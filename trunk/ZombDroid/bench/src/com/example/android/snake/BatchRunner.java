@@ -0,0 +1,211 @@
+package com.example.android.snake;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BatchRunner: plays lots of complete games at once, headless, to see how a
+ * change plays out over thousands of them. Each game is a ZombieGame set up
+ * the way SnakeView.initNewGame() does it and stepped the way update() does,
+ * with its own seed and a scripted player at the controls.
+ *
+ * Games are split into ranges of seeds on a work-stealing ForkJoinPool, so a
+ * thread whose games end early takes work from the others. Each range plays
+ * its games one after the other on a single ZombieGame, and only adds its
+ * totals to the shared counters once it is done, so threads never contend
+ * while playing and throughput should grow with every core added.
+ *
+ *   javac -sourcepath ../src -d out src/com/example/android/snake/BatchRunner.java
+ *   java -cp out com.example.android.snake.BatchRunner [games] [threads] [player] [width] [height]
+ *
+ * where player is "random" (turns at random) or "pace" (walks east and west
+ * along the bottom, so never wins). With threads 0 it runs once for every
+ * thread count from 1 up to the number of cores, to show how it scales.
+ *
+ */
+public class BatchRunner {
+
+    /**
+     * Ways of playing: turning at random, or pacing along the bottom.
+     */
+    public static final int RANDOM = 0;
+    public static final int PACE = 1;
+
+    /**
+     * Games that last this long are stopped and counted as timeouts.
+     */
+    public static final int MAX_TICKS = 5000;
+
+    /**
+     * Ranges of at most this many games aren't split any further.
+     */
+    private static final int GAMES_PER_TASK = 16;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mPlayer;
+
+    private final AtomicLong mGames = new AtomicLong();
+    private final AtomicLong mTicks = new AtomicLong();
+    private final AtomicLong mWins = new AtomicLong();
+    private final AtomicLong mLosses = new AtomicLong();
+    private final AtomicLong mScore = new AtomicLong();
+
+    /**
+     * @param width arena size
+     * @param height
+     * @param player RANDOM or PACE
+     */
+    public BatchRunner(int width, int height, int player) {
+        mWidth = width;
+        mHeight = height;
+        mPlayer = player;
+    }
+
+    /**
+     * Plays games with seeds from firstSeed up to firstSeed + games on
+     * threads threads, and waits for them all.
+     *
+     * @param firstSeed
+     * @param games
+     * @param threads
+     */
+    public void run(long firstSeed, int games, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Games(firstSeed, firstSeed + games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays one game to the end, or to MAX_TICKS, on game.
+     *
+     * @param game reused from the last game
+     * @param seed
+     * @param input the scripted player's luck, reseeded from seed
+     * @return the number of ticks played
+     */
+    long play(ZombieGame game, long seed, Random input) {
+        game.setSeed(seed);
+        game.newGame(mWidth, mHeight);
+        game.setMode(ZombieGame.RUNNING);
+        input.setSeed(seed);
+
+        int direction = ZombieGame.NORTH;
+        if (mPlayer == PACE) {
+            direction = ZombieGame.EAST;
+        }
+        while (game.getMode() == ZombieGame.RUNNING && game.getTick() < MAX_TICKS) {
+            if (mPlayer == PACE) {
+                int x = game.getPlayerX();
+                if (x >= mWidth - 2) {
+                    direction = ZombieGame.WEST;
+                } else if (x <= 1) {
+                    direction = ZombieGame.EAST;
+                }
+            } else if (input.nextInt(8) == 0) {
+                direction = 1 + input.nextInt(4);
+            }
+            game.step(direction);
+        }
+        return game.getTick();
+    }
+
+    public long getGames() {
+        return mGames.get();
+    }
+
+    public long getTicks() {
+        return mTicks.get();
+    }
+
+    public long getWins() {
+        return mWins.get();
+    }
+
+    public long getLosses() {
+        return mLosses.get();
+    }
+
+    public long getScore() {
+        return mScore.get();
+    }
+
+    /**
+     * Games: the games with seeds from mFrom up to mTo, split in half until
+     * they are few enough to play.
+     */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long mFrom;
+        private final long mTo;
+
+        Games(long from, long to) {
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > GAMES_PER_TASK) {
+                long middle = mFrom + (mTo - mFrom) / 2;
+                invokeAll(new Games(mFrom, middle), new Games(middle, mTo));
+                return;
+            }
+
+            ZombieGame game = new ZombieGame();
+            Random input = new Random();
+            long ticks = 0;
+            long wins = 0;
+            long losses = 0;
+            long score = 0;
+            for (long seed = mFrom; seed < mTo; seed++) {
+                ticks += play(game, seed, input);
+                if (game.getMode() == ZombieGame.WIN) {
+                    wins++;
+                } else if (game.getMode() == ZombieGame.LOSE) {
+                    losses++;
+                }
+                score += game.getScore();
+            }
+            mGames.addAndGet(mTo - mFrom);
+            mTicks.addAndGet(ticks);
+            mWins.addAndGet(wins);
+            mLosses.addAndGet(losses);
+            mScore.addAndGet(score);
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int player = args.length > 2 && args[2].equals("pace") ? PACE : RANDOM;
+        int width = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int height = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+
+        // Let the JIT see the game before anything is timed
+        new BatchRunner(width, height, player).run(-1000, 1000, 1);
+
+        System.out.println(String.format("%8s %8s %12s %12s %8s %8s %8s",
+                "threads", "games", "games/s", "ticks/s", "won", "lost", "timeout"));
+        int from = threads > 0 ? threads : 1;
+        int to = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        for (int count = from; count <= to; count++) {
+            BatchRunner runner = new BatchRunner(width, height, player);
+            long start = System.nanoTime();
+            runner.run(0, games, count);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long timeouts = runner.getGames() - runner.getWins() - runner.getLosses();
+            System.out.println(String.format("%8d %8d %12.0f %12.0f %8d %8d %8d",
+                    count, runner.getGames(), runner.getGames() / seconds,
+                    runner.getTicks() / seconds, runner.getWins(), runner.getLosses(),
+                    timeouts));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.snake;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * ReplaySession: plays an InputLog written by a device again at full speed,
+ * checks it ends in the recorded state and reports how fast it ran. Without
+ * a log it records a random session of its own first. A log recorded on a
+ * level, rather than a plain arena, needs the same level file after it, such
+ * as res/raw/level1.zdl.
+ *
+ *   javac -sourcepath ../src -d out src/com/example/android/snake/ReplaySession.java
+ *   java -cp out com.example.android.snake.ReplaySession [input-log [level]]
+ *
+ */
+public class ReplaySession {
+
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws IOException {
+        InputLog log;
+        if (args.length > 0) {
+            InputStream in = new FileInputStream(args[0]);
+            try {
+                log = InputLog.readFrom(in);
+            } finally {
+                in.close();
+            }
+        } else {
+            log = recordSession(100, 100, 20000);
+        }
+        if (!log.isFinished()) {
+            System.out.println("input log isn't finished");
+            System.exit(1);
+        }
+        Level level = Level.border(log.getWidth(), log.getHeight());
+        if (args.length > 1) {
+            InputStream in = new FileInputStream(args[1]);
+            try {
+                level = Level.read(in);
+            } finally {
+                in.close();
+            }
+        }
+        if (level.hash() != log.getLevelHash()) {
+            System.out.println("input log was recorded on another level");
+            System.exit(1);
+        }
+
+        Replayer replayer = new Replayer();
+        replayer.setLevel(level);
+        boolean matched = true;
+        long start = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            matched &= replayer.verify(log);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d ticks on %dx%d, %d direction changes",
+                log.getEndTick(), log.getWidth(), log.getHeight(), log.size()));
+        System.out.println(String.format("%.0f ticks/s, final state %s",
+                RUNS * log.getEndTick() / seconds, matched ? "matches" : "DIFFERS"));
+        if (!matched) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays a seeded game with random turns until it ends or runs out of
+     * ticks, recording it.
+     */
+    private static InputLog recordSession(int width, int height, int ticks) {
+        InputLog log = new InputLog();
+        ZombieGame game = new ZombieGame();
+        long seed = System.nanoTime();
+        Level level = Level.border(width, height);
+        game.setSeed(seed);
+        log.start(seed, level);
+        game.newGame(level);
+        game.setMode(ZombieGame.RUNNING);
+
+        Random input = new Random(seed);
+        int direction = ZombieGame.NORTH;
+        while (game.getMode() == ZombieGame.RUNNING && game.getTick() < ticks) {
+            if (input.nextInt(8) == 0) {
+                direction = 1 + input.nextInt(4);
+            }
+            log.record(game.getTick(), direction);
+            game.step(direction);
+        }
+        log.finish(game.getTick(), game.stateHash());
+        return log;
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.android.snake;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * TickBenchmark: measures what each part of a ZombieGame tick costs on a plain
+ * JVM. Every case is run for each horde size and arena size in HORDES and
+ * ARENAS, and reports throughput and the bytes allocated per operation.
+ *
+ * Build it against the game sources and run it with
+ *
+ *   javac -sourcepath ../src -d out src/com/example/android/snake/TickBenchmark.java
+ *   java -cp out com.example.android.snake.TickBenchmark [case-name-filter]
+ *
+ * from the bench directory. javac pulls in only the game classes the benchmark
+ * uses, none of which need Android. The benchmark lives in the game's package
+ * so it can reach the individual phases of a tick.
+ *
+ */
+public class TickBenchmark {
+
+    /**
+     * Horde sizes, from the START_ZOMBIES a game starts with up to 100k.
+     */
+    private static final int[] HORDES = { ZombieGame.START_ZOMBIES, 1000, 10000, 100000 };
+
+    /**
+     * Arena sizes as {width, height}: about a phone screen, then bigger maps.
+     */
+    private static final int[][] ARENAS = { { 20, 30 }, { 100, 100 }, { 1000, 1000 } };
+
+    /**
+     * Hordes are only spawned into arenas at most this full, so there is
+     * always room for them.
+     */
+    private static final int MAX_FILL_DIVISOR = 4;
+
+    /**
+     * Frames are composed of TILE_SIZE pixel tiles, at most SCREEN_COLUMNS x
+     * SCREEN_ROWS of them, about a phone screen.
+     */
+    private static final int TILE_SIZE = 12;
+    private static final int SCREEN_COLUMNS = 40;
+    private static final int SCREEN_ROWS = 64;
+
+    private static final long WARMUP_NANOS = 500L * 1000 * 1000;
+    private static final long MEASURE_NANOS = 1000L * 1000 * 1000;
+    private static final int BATCH = 64;
+
+    /**
+     * Case: one thing to measure. setUp() builds the game once per horde and
+     * arena size, run() is the operation being timed.
+     */
+    abstract static class Case {
+        final String mName;
+
+        Case(String name) {
+            mName = name;
+        }
+
+        void setUp(ZombieGame game, int width, int height, int zombies) {
+            newGame(game, width, height, zombies);
+        }
+
+        abstract void run(ZombieGame game);
+    }
+
+    private static final Case[] CASES = {
+        new Case("updateZombies") {
+            void run(ZombieGame game) {
+                game.updateZombies();
+            }
+        },
+        new Case("updatePlayer") {
+            void setUp(ZombieGame game, int width, int height, int zombies) {
+                newGame(game, width, height, zombies);
+                game.setDirection(ZombieGame.EAST);
+            }
+
+            void run(ZombieGame game) {
+                // Pace east and west along the bottom so the player never wins
+                int headX = game.getPlayerX();
+                if (headX >= game.getWidth() - 2) {
+                    game.setDirection(ZombieGame.WEST);
+                } else if (headX <= 1) {
+                    game.setDirection(ZombieGame.EAST);
+                }
+                game.updatePlayer();
+            }
+        },
+        new Case("updateCombat") {
+            void setUp(ZombieGame game, int width, int height, int zombies) {
+                newGame(game, width, height, zombies);
+                armSharpshooter(game.getSurvivors(), game.getPlayerIndex(), width, height);
+                mSize = zombies;
+            }
+
+            int mSize;
+
+            void run(ZombieGame game) {
+                game.updateCombat();
+                // Replace whoever was shot so the horde stays the same size
+                game.spawnZombies(mSize - game.getZombies().size());
+            }
+        },
+        new Case("updateCombat64Shooters") {
+            void setUp(ZombieGame game, int width, int height, int zombies) {
+                newGame(game, width, height, zombies);
+                EntityStore survivors = game.getSurvivors();
+                armSharpshooter(survivors, game.getPlayerIndex(), width, height);
+                for (int shooter = 1; shooter < 64; shooter++) {
+                    int index = survivors.add(1 + shooter * (width - 2) / 64, height - 2);
+                    armSharpshooter(survivors, index, width, height);
+                }
+                mSize = zombies;
+            }
+
+            int mSize;
+
+            void run(ZombieGame game) {
+                game.updateCombat();
+                game.spawnZombies(mSize - game.getZombies().size());
+            }
+        },
+        new Case("fieldOfView") {
+            void run(ZombieGame game) {
+                // What a player move costs; standing still costs nothing
+                FieldOfView sight = game.getFieldOfView();
+                sight.invalidate();
+                sight.update(game.getLevel(), game.getPlayerX(), game.getPlayerY());
+            }
+        },
+        new Case("addRandomZombie") {
+            void run(ZombieGame game) {
+                game.addRandomZombie();
+                EntityStore zombies = game.getZombies();
+                zombies.remove(zombies.size() - 1);
+            }
+        },
+        new Case("saveRestore") {
+            void run(ZombieGame game) {
+                // What SnakeView.saveState() and restoreState() used to do,
+                // minus the Bundle
+                int[] zombies = game.getZombies().toArray();
+                int[] survivors = game.getSurvivors().toArray();
+                game.getZombies().fromArray(zombies);
+                game.getSurvivors().fromArray(survivors);
+            }
+        },
+        new FrameCase("composeFrame", false),
+        new FrameCase("scrollFrame", true),
+        new Case("snapshotSaveRestore") {
+            final GameSnapshot mSnapshot = new GameSnapshot();
+
+            void run(ZombieGame game) {
+                // What SnakeView.saveState() and restoreState() do, minus the Bundle
+                mSnapshot.restore(game, mSnapshot.save(game));
+            }
+        },
+    };
+
+    /**
+     * FrameCase: what SnakeView and TileView do to show a frame with software
+     * rendering: lay out the tiles in the camera's window from the game, and
+     * compose them. A scrolling case pans the camera a tile every frame,
+     * bouncing off the world's edges, and lays out the whole window again
+     * each time; otherwise the window is laid out once and only composed.
+     */
+    static class FrameCase extends Case {
+        final boolean mScroll;
+        final TileRenderer mRenderer = new TileRenderer(TILE_SIZE);
+        final Camera mCamera = new Camera();
+        final int[][] mStaticGrid = new int[SCREEN_COLUMNS][SCREEN_ROWS];
+        final int[][] mTileGrid = new int[SCREEN_COLUMNS][SCREEN_ROWS];
+        int mStep = 1;
+
+        FrameCase(String name, boolean scroll) {
+            super(name);
+            mScroll = scroll;
+            mCamera.setViewSize(SCREEN_COLUMNS, SCREEN_ROWS);
+            mRenderer.resetTiles(4);
+            for (int key = 1; key < 4; key++) {
+                mRenderer.setTile(key, starTile(key));
+            }
+            mRenderer.resize(SCREEN_COLUMNS * TILE_SIZE, SCREEN_ROWS * TILE_SIZE);
+        }
+
+        void setUp(ZombieGame game, int width, int height, int zombies) {
+            super.setUp(game, width, height, zombies);
+            mCamera.setWorldSize(width, height);
+            mCamera.moveTo(0, 0);
+            layOut(game);
+        }
+
+        void run(ZombieGame game) {
+            if (mScroll) {
+                if (!mCamera.moveTo(mCamera.getX() + mStep, mCamera.getY())) {
+                    mStep = -mStep;
+                }
+                layOut(game);
+            }
+            mRenderer.compose(mStaticGrid, mTileGrid, null, mCamera.getX(), mCamera.getY(),
+                    0, 0, 0, 0, SCREEN_COLUMNS - 1, SCREEN_ROWS - 1);
+        }
+
+        /**
+         * Sets every tile of the window the way SnakeView.updateWalls() and
+         * redrawAllTiles() do, looking each one up.
+         */
+        private void layOut(ZombieGame game) {
+            SpatialGrid survivors = game.getSurvivors().getGrid();
+            SpatialGrid zombies = game.getZombies().getGrid();
+            for (int column = 0; column < SCREEN_COLUMNS; column++) {
+                for (int row = 0; row < SCREEN_ROWS; row++) {
+                    int x = mCamera.getX() + column;
+                    int y = mCamera.getY() + row;
+                    boolean inside = x < game.getWidth() && y < game.getHeight();
+                    mStaticGrid[column][row] = inside && game.isWall(x, y) ? 3 : 0;
+                    int tile = 0;
+                    if (survivors.at(x, y) != -1) {
+                        tile = 2;
+                    } else if (zombies.at(x, y) != -1) {
+                        tile = 1;
+                    }
+                    mTileGrid[column][row] = tile;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        System.out.println(String.format("%-22s %8s %11s %14s %12s",
+                "case", "zombies", "arena", "ops/s", "bytes/op"));
+        for (Case c : CASES) {
+            if (c.mName.indexOf(filter) < 0) {
+                continue;
+            }
+            for (int[] arena : ARENAS) {
+                for (int zombies : HORDES) {
+                    if (zombies > arena[0] * arena[1] / MAX_FILL_DIVISOR) {
+                        continue;
+                    }
+                    ZombieGame game = new ZombieGame();
+                    c.setUp(game, arena[0], arena[1], zombies);
+
+                    measure(c, game, WARMUP_NANOS, threads);
+                    double[] result = measure(c, game, MEASURE_NANOS, threads);
+                    System.out.println(String.format("%-22s %8d %11s %14.0f %12.1f",
+                            c.mName, zombies, arena[0] + "x" + arena[1],
+                            result[0], result[1]));
+                }
+            }
+        }
+
+        if ("snapshotSize".indexOf(filter) >= 0) {
+            printSnapshotSizes();
+        }
+    }
+
+    /**
+     * Compares how much saved state takes as a GameSnapshot and as the int[]
+     * pairs SnakeView used to put in its Bundle, counted the way a Parcel
+     * writes them: a length then 4 bytes per int.
+     */
+    private static void printSnapshotSizes() {
+        System.out.println();
+        System.out.println(String.format("%-22s %8s %11s %14s %12s",
+                "snapshotSize", "zombies", "arena", "int[] bytes", "bytes"));
+        GameSnapshot snapshot = new GameSnapshot();
+        for (int[] arena : ARENAS) {
+            for (int zombies : HORDES) {
+                if (zombies > arena[0] * arena[1] / MAX_FILL_DIVISOR) {
+                    continue;
+                }
+                ZombieGame game = new ZombieGame();
+                newGame(game, arena[0], arena[1], zombies);
+                int arrays = 4 * (2 + game.getZombies().toArray().length
+                        + game.getSurvivors().toArray().length);
+                System.out.println(String.format("%-22s %8d %11s %14d %12d",
+                        "", zombies, arena[0] + "x" + arena[1],
+                        arrays, snapshot.save(game).length));
+            }
+        }
+    }
+
+    /**
+     * Runs a case in batches for at least the given time.
+     *
+     * @return {operations per second, bytes allocated per operation}, the
+     * latter NaN if the JVM can't count allocations
+     */
+    private static double[] measure(Case c, ZombieGame game, long nanos,
+            ThreadMXBean threads) {
+        long bytesBefore = allocatedBytes(threads);
+        long start = System.nanoTime();
+        long elapsed;
+        long ops = 0;
+        do {
+            for (int index = 0; index < BATCH; index++) {
+                c.run(game);
+                game.clearChangedTiles();
+            }
+            ops += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        long bytesAfter = allocatedBytes(threads);
+
+        double opsPerSecond = ops * 1e9 / elapsed;
+        double bytesPerOp = bytesBefore < 0 ? Double.NaN
+                : (double) (bytesAfter - bytesBefore) / ops;
+        return new double[] { opsPerSecond, bytesPerOp };
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Arms a survivor to hit with every shot, every turn, anywhere on the
+     * arena.
+     */
+    static void armSharpshooter(EntityStore survivors, int index, int width, int height) {
+        Weapon rifle = new Weapon();
+        rifle.setPower(ZombieGame.ZOMBIE_HEALTH);
+        rifle.setAccuracy(100);
+        rifle.setFireRatePerTurn(0);
+        rifle.setAmmo(Integer.MAX_VALUE);
+        rifle.setRange(Math.max(width, height));
+        survivors.arm(index, rifle);
+    }
+
+    /**
+     * Makes a tile like the star drawables: a disc of colour on a transparent
+     * square.
+     */
+    static int[] starTile(int key) {
+        int[] argb = new int[TILE_SIZE * TILE_SIZE];
+        int radius = TILE_SIZE / 2;
+        for (int y = 0; y < TILE_SIZE; y++) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                int dx = 2 * x + 1 - TILE_SIZE;
+                int dy = 2 * y + 1 - TILE_SIZE;
+                if (dx * dx + dy * dy <= 4 * radius * radius) {
+                    argb[y * TILE_SIZE + x] = 0xff000000 | (0x3f << (8 * (key - 1)));
+                }
+            }
+        }
+        return argb;
+    }
+
+    /**
+     * Starts a running game with the given horde size.
+     */
+    static void newGame(ZombieGame game, int width, int height, int zombies) {
+        game.newGame(width, height);
+        game.setMode(ZombieGame.RUNNING);
+        game.spawnZombies(zombies - game.getZombies().size());
+        while (game.getZombies().size() > zombies) {
+            game.getZombies().remove(game.getZombies().size() - 1);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.example.android.snake;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * WeaponSweep: plays the same seeded games with every combination of a grid
+ * of weapon settings, to see how each setting moves the win rate and how long
+ * the player lasts. Every point of the grid plays games with seeds firstSeed
+ * up to firstSeed + games, so all the points face the same arenas and the
+ * differences between them are down to the weapon.
+ *
+ * Points are played in parallel on a work-stealing ForkJoinPool, the way
+ * BatchRunner plays games, and each finished point is appended to the output
+ * file as one block of columns:
+ *
+ *   'Z' 'W' version width height player games firstSeed (grid)
+ *   point (outcomes) (ticks) (scores) crc
+ *   ...
+ *
+ * where the grid is a count and the values for each of PARAMETERS, outcomes
+ * are a byte a game, ticks and scores are an unsigned short a game, and the
+ * crc covers the block. A sweep that is stopped leaves at most one torn block
+ * at the end, so running it again on the same file with the same grid cuts
+ * that block off and plays only the points that aren't in the file yet.
+ *
+ *   javac -sourcepath ../src:src -d out src/com/example/android/snake/WeaponSweep.java
+ *   java -cp out com.example.android.snake.WeaponSweep run file [games] [threads] [name=value,value...]...
+ *   java -cp out com.example.android.snake.WeaponSweep report file
+ *
+ * The default grid has 1280 points, so 800 games a point is about a million
+ * games.
+ *
+ */
+public class WeaponSweep {
+
+    /**
+     * Weapon settings that can be swept, in the order the grid is laid out.
+     * The last one changes fastest from one point to the next.
+     */
+    public static final String[] PARAMETERS = {
+            "power", "range", "accuracy", "clip", "fireRate"
+    };
+
+    /**
+     * Outcomes of a game, as stored in the outcome column.
+     */
+    public static final int TIMEOUT = 0;
+    public static final int WON = 1;
+    public static final int LOST = 2;
+
+    private static final byte MAGIC_0 = 'Z';
+    private static final byte MAGIC_1 = 'W';
+    private static final int VERSION = 1;
+
+    private static final int[][] DEFAULT_GRID = {
+            { 40, 60, 80, 100, 120 },
+            { 4, 8, 12, 16 },
+            { 50, 65, 80, 95 },
+            { 2, 5, 8, 12 },
+            { 0, 5, 10, 20 },
+    };
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mPlayer;
+    private final int mGames;
+    private final long mFirstSeed;
+    private final int[][] mGrid;
+    private final int mPoints;
+
+    private OutputStream mOut;
+    private final AtomicLong mPlayed = new AtomicLong();
+
+    /**
+     * @param width arena size
+     * @param height
+     * @param player BatchRunner.RANDOM or BatchRunner.PACE
+     * @param games games played at each point
+     * @param firstSeed seed of the first game at each point
+     * @param grid the values of each of PARAMETERS to try
+     */
+    public WeaponSweep(int width, int height, int player, int games, long firstSeed,
+            int[][] grid) {
+        mWidth = width;
+        mHeight = height;
+        mPlayer = player;
+        mGames = games;
+        mFirstSeed = firstSeed;
+        mGrid = grid;
+        int points = 1;
+        for (int parameter = 0; parameter < grid.length; parameter++) {
+            points *= grid[parameter].length;
+        }
+        mPoints = points;
+    }
+
+    public int getPointCount() {
+        return mPoints;
+    }
+
+    /**
+     * @return the number of games played by the last sweep(), not counting
+     * any already in the file
+     */
+    public long getPlayed() {
+        return mPlayed.get();
+    }
+
+    /**
+     * @param point from 0 to getPointCount()
+     * @return the value of each of PARAMETERS at point
+     */
+    public int[] getValues(int point) {
+        int[] values = new int[mGrid.length];
+        for (int parameter = mGrid.length - 1; parameter >= 0; parameter--) {
+            values[parameter] = mGrid[parameter][point % mGrid[parameter].length];
+            point /= mGrid[parameter].length;
+        }
+        return values;
+    }
+
+    /**
+     * Makes the weapon for a point: the pistol from ZombieGame.newGame(),
+     * with the swept settings changed.
+     *
+     * @param values from getValues()
+     * @return a new weapon
+     */
+    public static Weapon newWeapon(int[] values) {
+        Weapon weapon = new Weapon();
+        weapon.setPowerCurve(5);
+        weapon.setAmmo(8);
+        weapon.setAmmoInClip(2);
+        weapon.setTurnsUntilNextShot(0);
+        weapon.setPower(values[0]);
+        weapon.setRange(values[1]);
+        weapon.setAccuracy(values[2]);
+        weapon.setClipSize(values[3]);
+        weapon.setFireRatePerTurn(values[4]);
+        return weapon;
+    }
+
+    /**
+     * Plays every point that isn't in file yet and appends them to it. A
+     * file too short to hold a header is started again from scratch.
+     *
+     * @param file
+     * @param threads
+     * @return the number of points that were already in the file
+     * @throws IOException if the file can't be written, or holds a sweep of
+     * a different grid
+     */
+    public int sweep(File file, int threads) throws IOException {
+        byte[] header = header();
+        boolean[] done = new boolean[mPoints];
+        int resumed = 0;
+        if (file.length() >= header.length) {
+            resumed = scan(file, header, done);
+        } else {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(header);
+            } finally {
+                out.close();
+            }
+        }
+
+        int[] pending = new int[mPoints - resumed];
+        int count = 0;
+        for (int point = 0; point < mPoints; point++) {
+            if (!done[point]) {
+                pending[count++] = point;
+            }
+        }
+
+        mPlayed.set(0);
+        mOut = new FileOutputStream(file, true);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Points(pending, 0, count));
+        } finally {
+            pool.shutdown();
+            mOut.close();
+            mOut = null;
+        }
+        return resumed;
+    }
+
+    /**
+     * Reads the blocks already in file, marks their points done and cuts off
+     * anything after the last whole block.
+     */
+    private int scan(File file, byte[] header, boolean[] done) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "rw");
+        try {
+            byte[] existing = new byte[header.length];
+            in.readFully(existing);
+            if (!Arrays.equals(existing, header)) {
+                throw new IOException(file + " holds a different sweep");
+            }
+            byte[] block = new byte[blockSize()];
+            long valid = header.length;
+            int resumed = 0;
+            CRC32 crc = new CRC32();
+            while (valid + block.length <= in.length()) {
+                in.readFully(block);
+                crc.reset();
+                crc.update(block, 0, block.length - 4);
+                int point = readInt(block, 0);
+                if ((int) crc.getValue() != readInt(block, block.length - 4)
+                        || point < 0 || point >= mPoints || done[point]) {
+                    break;
+                }
+                done[point] = true;
+                resumed++;
+                valid += block.length;
+            }
+            in.setLength(valid);
+            return resumed;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Plays every game of one point and appends its block to the file.
+     *
+     * @param point
+     * @param runner plays the games
+     * @param game to play them on, starting a new game for each
+     * @param input the scripted player's luck
+     */
+    void playPoint(int point, BatchRunner runner, ZombieGame game, Random input)
+            throws IOException {
+        game.setLoadout(newWeapon(getValues(point)));
+
+        byte[] block = new byte[blockSize()];
+        writeInt(block, 0, point);
+        int outcomes = 4;
+        int ticks = outcomes + mGames;
+        int scores = ticks + 2 * mGames;
+        for (int index = 0; index < mGames; index++) {
+            long played = runner.play(game, mFirstSeed + index, input);
+            int outcome = TIMEOUT;
+            if (game.getMode() == ZombieGame.WIN) {
+                outcome = WON;
+            } else if (game.getMode() == ZombieGame.LOSE) {
+                outcome = LOST;
+            }
+            block[outcomes + index] = (byte) outcome;
+            writeShort(block, ticks + 2 * index, (int) Math.min(played, 0xffff));
+            writeShort(block, scores + 2 * index, (int) Math.min(game.getScore(), 0xffff));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, block.length - 4);
+        writeInt(block, block.length - 4, (int) crc.getValue());
+
+        synchronized (this) {
+            mOut.write(block);
+            mOut.flush();
+        }
+        mPlayed.addAndGet(mGames);
+    }
+
+    private int blockSize() {
+        return 4 + 5 * mGames + 4;
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeInt(mWidth);
+        out.writeInt(mHeight);
+        out.writeInt(mPlayer);
+        out.writeInt(mGames);
+        out.writeLong(mFirstSeed);
+        out.writeInt(mGrid.length);
+        for (int parameter = 0; parameter < mGrid.length; parameter++) {
+            out.writeInt(mGrid[parameter].length);
+            for (int value = 0; value < mGrid[parameter].length; value++) {
+                out.writeInt(mGrid[parameter][value]);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the sweep described by a file's header, leaving in at the first
+     * block.
+     *
+     * @param in
+     * @return a sweep of the same grid
+     * @throws IOException if in isn't a sweep file
+     */
+    public static WeaponSweep readHeader(DataInputStream in) throws IOException {
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("not a weapon sweep");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported sweep version " + version);
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        int player = in.readInt();
+        int games = in.readInt();
+        long firstSeed = in.readLong();
+        int[][] grid = new int[in.readInt()][];
+        for (int parameter = 0; parameter < grid.length; parameter++) {
+            grid[parameter] = new int[in.readInt()];
+            for (int value = 0; value < grid[parameter].length; value++) {
+                grid[parameter][value] = in.readInt();
+            }
+        }
+        return new WeaponSweep(width, height, player, games, firstSeed, grid);
+    }
+
+    /**
+     * Prints a line for every point in a sweep file: its settings, the share
+     * of games won and lost, and the mean ticks survived and zombies killed.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void report(File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            WeaponSweep sweep = readHeader(in);
+            int games = sweep.mGames;
+            StringBuilder line = new StringBuilder();
+            for (int parameter = 0; parameter < PARAMETERS.length; parameter++) {
+                line.append(String.format("%9s", PARAMETERS[parameter]));
+            }
+            line.append(String.format(" %7s %7s %9s %8s", "won%", "lost%", "ticks", "kills"));
+            System.out.println(line);
+
+            byte[] block = new byte[sweep.blockSize()];
+            int points = 0;
+            while (true) {
+                try {
+                    in.readFully(block);
+                } catch (EOFException e) {
+                    break;
+                }
+                int[] values = sweep.getValues(readInt(block, 0));
+                long won = 0;
+                long lost = 0;
+                long ticks = 0;
+                long kills = 0;
+                for (int index = 0; index < games; index++) {
+                    if (block[4 + index] == WON) {
+                        won++;
+                    } else if (block[4 + index] == LOST) {
+                        lost++;
+                    }
+                    ticks += readShort(block, 4 + games + 2 * index);
+                    kills += readShort(block, 4 + 3 * games + 2 * index);
+                }
+                line.setLength(0);
+                for (int parameter = 0; parameter < values.length; parameter++) {
+                    line.append(String.format("%9d", values[parameter]));
+                }
+                line.append(String.format(" %7.1f %7.1f %9.1f %8.2f", 100.0 * won / games,
+                        100.0 * lost / games, (double) ticks / games, (double) kills / games));
+                System.out.println(line);
+                points++;
+            }
+            System.out.println(points + " of " + sweep.getPointCount() + " points, "
+                    + games + " games each");
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+    }
+
+    private static void writeShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 8 | (data[offset + 1] & 0xff);
+    }
+
+    /**
+     * Points: the pending points from mFrom up to mTo, split in half until
+     * there is one to play.
+     */
+    private class Points extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] mPending;
+        private final int mFrom;
+        private final int mTo;
+
+        Points(int[] pending, int from, int to) {
+            mPending = pending;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > 1) {
+                int middle = mFrom + (mTo - mFrom) / 2;
+                invokeAll(new Points(mPending, mFrom, middle), new Points(mPending, middle, mTo));
+                return;
+            }
+            if (mTo == mFrom) {
+                return;
+            }
+            try {
+                playPoint(mPending[mFrom], new BatchRunner(mWidth, mHeight, mPlayer),
+                        new ZombieGame(), new Random());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("run") || args[0].equals("report"))) {
+            System.out.println("usage: WeaponSweep run file [games] [threads] [name=value,value...]...");
+            System.out.println("       WeaponSweep report file");
+            System.exit(1);
+        }
+        File file = new File(args[1]);
+        if (args[0].equals("report")) {
+            report(file);
+            return;
+        }
+
+        int games = 800;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int[][] grid = DEFAULT_GRID.clone();
+        int positional = 0;
+        for (int arg = 2; arg < args.length; arg++) {
+            int equals = args[arg].indexOf('=');
+            if (equals < 0) {
+                if (positional++ == 0) {
+                    games = Integer.parseInt(args[arg]);
+                } else {
+                    threads = Integer.parseInt(args[arg]);
+                }
+                continue;
+            }
+            int parameter = Arrays.asList(PARAMETERS).indexOf(args[arg].substring(0, equals));
+            if (parameter < 0) {
+                System.out.println("unknown parameter " + args[arg]);
+                System.exit(1);
+            }
+            String[] values = args[arg].substring(equals + 1).split(",");
+            grid[parameter] = new int[values.length];
+            for (int value = 0; value < values.length; value++) {
+                grid[parameter][value] = Integer.parseInt(values[value]);
+            }
+        }
+
+        WeaponSweep sweep = new WeaponSweep(20, 30, BatchRunner.RANDOM, games, 0, grid);
+        long start = System.nanoTime();
+        int resumed = sweep.sweep(file, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d points, %d already done, %d games in %.1f s, %.0f games/s",
+                sweep.getPointCount(), resumed, sweep.getPlayed(), seconds,
+                sweep.getPlayed() / seconds));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.snake;
+
+/**
+ * Camera: which window of the world the view shows, when the world is bigger
+ * than the screen. The window is the view's size in tiles, and its top left
+ * tile is the camera's position.
+ *
+ * follow() keeps a target, the player, inside the middle of the window: the
+ * camera only scrolls once the target comes within a quarter of the window of
+ * an edge, and then just far enough to put it back, so walking about the
+ * middle doesn't redraw the whole view every tick. The window never goes past
+ * the edge of the world, and a world smaller than the window is shown from
+ * its top left.
+ *
+ */
+public class Camera {
+
+    private int mWorldWidth;
+    private int mWorldHeight;
+    private int mColumns;
+    private int mRows;
+    private int mX;
+    private int mY;
+
+    /**
+     * @param width size of the world in tiles
+     * @param height
+     */
+    public void setWorldSize(int width, int height) {
+        mWorldWidth = width;
+        mWorldHeight = height;
+        clamp();
+    }
+
+    /**
+     * @param columns size of the window in tiles
+     * @param rows
+     */
+    public void setViewSize(int columns, int rows) {
+        mColumns = columns;
+        mRows = rows;
+        clamp();
+    }
+
+    public int getX() {
+        return mX;
+    }
+
+    public int getY() {
+        return mY;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * @param x world tile
+     * @param y
+     * @return whether x/y is inside the window
+     */
+    public boolean contains(int x, int y) {
+        return x >= mX && y >= mY && x < mX + mColumns && y < mY + mRows;
+    }
+
+    /**
+     * Puts x/y in the middle of the window, as far as the world's edges let
+     * it.
+     *
+     * @param x world tile
+     * @param y
+     * @return whether the window moved
+     */
+    public boolean centerOn(int x, int y) {
+        return moveTo(x - mColumns / 2, y - mRows / 2);
+    }
+
+    /**
+     * Scrolls the window just enough to keep x/y out of the quarter of it
+     * next to each edge.
+     *
+     * @param x world tile
+     * @param y
+     * @return whether the window moved
+     */
+    public boolean follow(int x, int y) {
+        int marginX = mColumns / 4;
+        int marginY = mRows / 4;
+        int left = mX;
+        int top = mY;
+        if (x < mX + marginX) {
+            left = x - marginX;
+        } else if (x > mX + mColumns - 1 - marginX) {
+            left = x - (mColumns - 1 - marginX);
+        }
+        if (y < mY + marginY) {
+            top = y - marginY;
+        } else if (y > mY + mRows - 1 - marginY) {
+            top = y - (mRows - 1 - marginY);
+        }
+        return moveTo(left, top);
+    }
+
+    /**
+     * @param x world tile for the window's top left
+     * @param y
+     * @return whether the window moved
+     */
+    public boolean moveTo(int x, int y) {
+        int oldX = mX;
+        int oldY = mY;
+        mX = x;
+        mY = y;
+        clamp();
+        return mX != oldX || mY != oldY;
+    }
+
+    private void clamp() {
+        mX = Math.max(0, Math.min(mX, mWorldWidth - mColumns));
+        mY = Math.max(0, Math.min(mY, mWorldHeight - mRows));
+    }
+}
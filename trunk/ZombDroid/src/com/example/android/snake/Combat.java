@@ -0,0 +1,246 @@
+package com.example.android.snake;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Combat: works out a tick's worth of shooting in three passes, so any number
+ * of shooters costs about the same per shot and nothing is allocated once the
+ * arrays have grown.
+ *
+ * collect() runs every armed shooter's weapon and notes a fire intent for
+ * each shot that goes off. resolve() picks each shot's targets, the nearest
+ * zombies in range that a wall doesn't hide, and notes a hit with the damage
+ * it does. It only reads the horde, so shots fired together can all go for
+ * the same zombie. applyDamage() then takes every hit off the targets' health
+ * in one pass and lists who died.
+ *
+ * Damage is the weapon's Power, less PowerCurve percent of it for every tile
+ * past the first, doubled on a critical hit, which happens CriticalHit
+ * percent of the time.
+ *
+ */
+public class Combat {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Fire intents, mIntentCount of them: where each shot comes from and the
+     * state of the weapon that fired it.
+     */
+    private int mIntentCount;
+    private int[] mFromX = new int[INITIAL_CAPACITY];
+    private int[] mFromY = new int[INITIAL_CAPACITY];
+    private int[] mRange = new int[INITIAL_CAPACITY];
+    private int[] mTargets = new int[INITIAL_CAPACITY];
+    private int[] mPower = new int[INITIAL_CAPACITY];
+    private int[] mPowerCurve = new int[INITIAL_CAPACITY];
+    private int[] mCriticalHit = new int[INITIAL_CAPACITY];
+
+    /**
+     * Hits, mHitCount of them: index of the zombie hit and the damage done.
+     */
+    private int mHitCount;
+    private int[] mHitTarget = new int[INITIAL_CAPACITY];
+    private int[] mHitDamage = new int[INITIAL_CAPACITY];
+
+    /**
+     * mCandidates: scratch space for grid queries
+     * mDead: indices of the zombies applyDamage() killed, highest first
+     */
+    private int[] mCandidates = new int[INITIAL_CAPACITY];
+    private int[] mDead = new int[INITIAL_CAPACITY];
+    private int mDeadCount;
+
+    /**
+     * Runs the weapon of every armed shooter for one turn: counts down
+     * cooldowns, reloads empty weapons and fires the rest, noting a fire
+     * intent for every shot that goes off. Forgets the intents and hits of
+     * the last tick.
+     *
+     * @param shooters a store made with EntityStore.WEAPONS
+     * @param random decides whether shots go off
+     */
+    public void collect(EntityStore shooters, Random random) {
+        mIntentCount = 0;
+        mHitCount = 0;
+        mDeadCount = 0;
+        int count = shooters.size();
+        for (int shooter = 0; shooter < count; shooter++) {
+            if (!shooters.isArmed(shooter)) {
+                continue;
+            }
+            int cooldown = shooters.getCooldown(shooter);
+            if (cooldown != 0) {
+                shooters.setCooldown(shooter, cooldown - 1);
+                continue;
+            }
+            int ammo = shooters.getAmmo(shooter);
+            if (ammo <= 0) {
+                shooters.setAmmoInClip(shooter, Math.min(ammo, shooters.getClipSize(shooter)));
+                continue;
+            }
+            if (random.nextInt(100) >= shooters.getAccuracy(shooter)) {
+                continue;
+            }
+            shooters.setAmmo(shooter, ammo - 1);
+            shooters.setAmmoInClip(shooter, shooters.getAmmoInClip(shooter) - 1);
+            shooters.setCooldown(shooter, shooters.getFireRate(shooter));
+
+            if (mIntentCount == mFromX.length) {
+                growIntents();
+            }
+            int intent = mIntentCount++;
+            mFromX[intent] = shooters.getX(shooter);
+            mFromY[intent] = shooters.getY(shooter);
+            mRange[intent] = shooters.getRange(shooter);
+            mTargets[intent] = Math.max(1, shooters.getTargets(shooter));
+            mPower[intent] = shooters.getPower(shooter);
+            mPowerCurve[intent] = shooters.getPowerCurve(shooter);
+            mCriticalHit[intent] = shooters.getCriticalHit(shooter);
+        }
+    }
+
+    /**
+     * Picks the targets of every fire intent and works out the damage done.
+     * Anything strictly closer than the weapon's range on both axes, with no
+     * wall in between, can be hit, nearest first, up to the weapon's number
+     * of targets.
+     *
+     * @param zombies
+     * @param level walls that block shots
+     * @param random decides critical hits
+     */
+    public void resolve(EntityStore zombies, Level level, Random random) {
+        SpatialGrid grid = zombies.getGrid();
+        for (int intent = 0; intent < mIntentCount; intent++) {
+            int fromX = mFromX[intent];
+            int fromY = mFromY[intent];
+            int range = mRange[intent] - 1;
+            int targets = mTargets[intent];
+
+            // Ask for as many as are wanted, and only ask for more if walls
+            // hid some of them
+            int wanted = targets;
+            int found;
+            int visible;
+            while (true) {
+                if (mCandidates.length < wanted) {
+                    mCandidates = new int[Math.max(wanted, mCandidates.length * 2)];
+                }
+                found = grid.nearest(fromX, fromY, range, SpatialGrid.CHEBYSHEV, wanted,
+                        mCandidates);
+                visible = 0;
+                for (int candidate = 0; candidate < found && visible < targets; candidate++) {
+                    int zombie = mCandidates[candidate];
+                    if (level.isClear(fromX, fromY, zombies.getX(zombie), zombies.getY(zombie))) {
+                        mCandidates[visible++] = zombie;
+                    }
+                }
+                if (visible == targets || found < wanted) {
+                    break;
+                }
+                wanted *= 2;
+            }
+
+            for (int candidate = 0; candidate < visible; candidate++) {
+                int zombie = mCandidates[candidate];
+                int distance = Math.max(Math.abs(zombies.getX(zombie) - fromX),
+                        Math.abs(zombies.getY(zombie) - fromY));
+                int falloff = Math.max(0, 100 - mPowerCurve[intent] * Math.max(0, distance - 1));
+                int damage = mPower[intent] * falloff / 100;
+                if (mCriticalHit[intent] > 0 && random.nextInt(100) < mCriticalHit[intent]) {
+                    damage *= 2;
+                }
+                if (mHitCount == mHitTarget.length) {
+                    growHits();
+                }
+                mHitTarget[mHitCount] = zombie;
+                mHitDamage[mHitCount] = damage;
+                mHitCount++;
+            }
+        }
+    }
+
+    /**
+     * Takes the damage of every hit off the targets' health, and lists the
+     * ones it takes to 0 or below, each once, highest index first so they can
+     * be removed in that order.
+     *
+     * @param zombies
+     * @return the number of zombies killed, see getDead()
+     */
+    public int applyDamage(EntityStore zombies) {
+        mDeadCount = 0;
+        for (int hit = 0; hit < mHitCount; hit++) {
+            int zombie = mHitTarget[hit];
+            int health = zombies.getHealth(zombie);
+            if (health <= 0) {
+                // Already killed by an earlier hit this tick
+                continue;
+            }
+            health -= mHitDamage[hit];
+            zombies.setHealth(zombie, health);
+            if (health <= 0) {
+                if (mDeadCount == mDead.length) {
+                    int[] dead = new int[mDead.length * 2];
+                    System.arraycopy(mDead, 0, dead, 0, mDeadCount);
+                    mDead = dead;
+                }
+                mDead[mDeadCount++] = zombie;
+            }
+        }
+        Arrays.sort(mDead, 0, mDeadCount);
+        for (int low = 0, high = mDeadCount - 1; low < high; low++, high--) {
+            int swap = mDead[low];
+            mDead[low] = mDead[high];
+            mDead[high] = swap;
+        }
+        return mDeadCount;
+    }
+
+    /**
+     * @return the number of shots fired by the last collect()
+     */
+    public int getIntentCount() {
+        return mIntentCount;
+    }
+
+    /**
+     * @return the number of hits found by the last resolve()
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @param index from 0 to the count applyDamage() returned
+     * @return the index of a zombie killed, highest first
+     */
+    public int getDead(int index) {
+        return mDead[index];
+    }
+
+    private void growIntents() {
+        int capacity = mFromX.length * 2;
+        mFromX = grow(mFromX, capacity);
+        mFromY = grow(mFromY, capacity);
+        mRange = grow(mRange, capacity);
+        mTargets = grow(mTargets, capacity);
+        mPower = grow(mPower, capacity);
+        mPowerCurve = grow(mPowerCurve, capacity);
+        mCriticalHit = grow(mCriticalHit, capacity);
+    }
+
+    private void growHits() {
+        int capacity = mHitTarget.length * 2;
+        mHitTarget = grow(mHitTarget, capacity);
+        mHitDamage = grow(mHitDamage, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
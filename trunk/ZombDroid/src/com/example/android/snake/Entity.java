@@ -1,13 +1,11 @@
 package com.example.android.snake;
 
-import android.graphics.Point;
-
 public class Entity {
-	private Point Location;
-	public Point getLocation() {
+	private Coordinate Location;
+	public Coordinate getLocation() {
 		return Location;
 	}
-	public void setLocation(Point location) {
+	public void setLocation(Coordinate location) {
 		Location = location;
 	}
 
@@ -0,0 +1,523 @@
+package com.example.android.snake;
+
+/**
+ * EntityStore: a table of entities of one kind, the horde or the survivors,
+ * kept as parallel arrays of components rather than one object per entity:
+ * position, health, what the AI is doing and, for stores made with WEAPONS,
+ * the state of the weapon each entity carries.
+ *
+ * Entities are addressed two ways. Their index is dense: removing an entity
+ * moves the last one into its slot, so the live entities are always indices
+ * 0 to size() - 1, and systems run over a component with a plain loop. Their
+ * id stays the same for as long as the entity lives, so it can be held on to
+ * across removals; indexOf() turns it back into the current index. Ids of
+ * removed entities are reused.
+ *
+ * The store keeps a SpatialGrid of its indices up to date, and for stores
+ * made with FREE_CELLS a FreeCellIndex of the tiles they leave empty, so
+ * every add, move and remove goes through here.
+ *
+ */
+public class EntityStore {
+
+    /**
+     * Optional parts of a store, or'ed together for the constructor: weapon
+     * components, and an index of the tiles no entity stands on.
+     */
+    public static final int WEAPONS = 1;
+    public static final int FREE_CELLS = 2;
+
+    /**
+     * AI states: out of reach of anyone worth chasing, closing in, and near
+     * but with nowhere better to go.
+     */
+    public static final int AI_DORMANT = 0;
+    public static final int AI_CHASING = 1;
+    public static final int AI_WAITING = 2;
+
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private int mCount;
+
+    /**
+     * mId: id of the entity at each index
+     * mIndexOf: index of each id, or NONE if the id isn't in use
+     * mFreeIds: ids free for reuse, mFreeIdCount of them
+     */
+    private int[] mId = new int[INITIAL_CAPACITY];
+    private int[] mIndexOf = new int[INITIAL_CAPACITY];
+    private int[] mFreeIds = new int[INITIAL_CAPACITY];
+    private int mFreeIdCount;
+    private int mNextId;
+
+    private int[] mX = new int[INITIAL_CAPACITY];
+    private int[] mY = new int[INITIAL_CAPACITY];
+    private int[] mHealth = new int[INITIAL_CAPACITY];
+    private byte[] mAiState = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Weapon components, null unless the store was made with WEAPONS. An
+     * entity without a weapon has mArmed false, a null mWeaponName and the
+     * rest zero. mCooldown is the number of turns until the next shot.
+     */
+    private boolean[] mArmed;
+    private String[] mWeaponName;
+    private int[] mRange;
+    private int[] mPower;
+    private int[] mPowerCurve;
+    private int[] mAccuracy;
+    private int[] mCriticalHit;
+    private int[] mFireRate;
+    private int[] mTargets;
+    private int[] mClipSize;
+    private int[] mAmmoInClip;
+    private int[] mAmmo;
+    private int[] mCooldown;
+
+    private final SpatialGrid mGrid = new SpatialGrid();
+    private final FreeCellIndex mFreeCells;
+
+    /**
+     * @param parts WEAPONS and/or FREE_CELLS, or 0 for neither
+     */
+    public EntityStore(int parts) {
+        mFreeCells = (parts & FREE_CELLS) != 0 ? new FreeCellIndex() : null;
+        if ((parts & WEAPONS) != 0) {
+            mArmed = new boolean[INITIAL_CAPACITY];
+            mWeaponName = new String[INITIAL_CAPACITY];
+            mRange = new int[INITIAL_CAPACITY];
+            mPower = new int[INITIAL_CAPACITY];
+            mPowerCurve = new int[INITIAL_CAPACITY];
+            mAccuracy = new int[INITIAL_CAPACITY];
+            mCriticalHit = new int[INITIAL_CAPACITY];
+            mFireRate = new int[INITIAL_CAPACITY];
+            mTargets = new int[INITIAL_CAPACITY];
+            mClipSize = new int[INITIAL_CAPACITY];
+            mAmmoInClip = new int[INITIAL_CAPACITY];
+            mAmmo = new int[INITIAL_CAPACITY];
+            mCooldown = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Sets the size of the arena the entities live in and re-indexes them.
+     *
+     * @param width
+     * @param height
+     */
+    public void resize(int width, int height) {
+        mGrid.resize(width, height);
+        if (mFreeCells != null) {
+            mFreeCells.resize(width, height);
+        }
+        for (int index = 0; index < mCount; index++) {
+            mGrid.insert(index, mX[index], mY[index]);
+            if (mFreeCells != null) {
+                mFreeCells.occupy(mX[index], mY[index]);
+            }
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @param index
+     * @return the id of the entity at index
+     */
+    public int getId(int index) {
+        return mId[index];
+    }
+
+    /**
+     * @param id
+     * @return the index of the entity with that id, or NONE if it has been
+     * removed
+     */
+    public int indexOf(int id) {
+        if (id < 0 || id >= mNextId) {
+            return NONE;
+        }
+        return mIndexOf[id];
+    }
+
+    public int getX(int index) {
+        return mX[index];
+    }
+
+    public int getY(int index) {
+        return mY[index];
+    }
+
+    public int getHealth(int index) {
+        return mHealth[index];
+    }
+
+    public void setHealth(int index, int health) {
+        mHealth[index] = health;
+    }
+
+    /**
+     * @param index
+     * @return AI_DORMANT, AI_CHASING or AI_WAITING
+     */
+    public int getAiState(int index) {
+        return mAiState[index];
+    }
+
+    public void setAiState(int index, int state) {
+        mAiState[index] = (byte) state;
+    }
+
+    public SpatialGrid getGrid() {
+        return mGrid;
+    }
+
+    /**
+     * @return the tiles no entity of this store stands on, or null unless
+     * the store was made with FREE_CELLS. Whatever else stands on tiles has
+     * to be occupied and vacated by its owner.
+     */
+    public FreeCellIndex getFreeCells() {
+        return mFreeCells;
+    }
+
+    /**
+     * Removes every entity. Keeps the arrays for reuse, and forgets every id.
+     */
+    public void clear() {
+        mCount = 0;
+        mFreeIdCount = 0;
+        mNextId = 0;
+        mGrid.clear();
+        if (mFreeCells != null) {
+            mFreeCells.clear();
+        }
+    }
+
+    /**
+     * Adds an entity at x/y with no health, dormant and unarmed.
+     *
+     * @param x
+     * @param y
+     * @return the new entity's index
+     */
+    public int add(int x, int y) {
+        if (mCount == mX.length) {
+            grow();
+        }
+        int id;
+        if (mFreeIdCount > 0) {
+            id = mFreeIds[--mFreeIdCount];
+        } else {
+            id = mNextId++;
+        }
+        int index = mCount++;
+        mId[index] = id;
+        mIndexOf[id] = index;
+        mX[index] = x;
+        mY[index] = y;
+        mHealth[index] = 0;
+        mAiState[index] = AI_DORMANT;
+        if (mArmed != null) {
+            disarm(index);
+        }
+        mGrid.insert(index, x, y);
+        if (mFreeCells != null) {
+            mFreeCells.occupy(x, y);
+        }
+        return index;
+    }
+
+    /**
+     * Moves an entity to x/y.
+     *
+     * @param index
+     * @param x
+     * @param y
+     */
+    public void move(int index, int x, int y) {
+        if (mFreeCells != null) {
+            mFreeCells.vacate(mX[index], mY[index]);
+            mFreeCells.occupy(x, y);
+        }
+        mX[index] = x;
+        mY[index] = y;
+        mGrid.move(index, x, y);
+    }
+
+    /**
+     * Removes an entity by moving the last entity into its slot. The index of
+     * that last entity changes to the removed one's; its id doesn't.
+     *
+     * @param index
+     */
+    public void remove(int index) {
+        int last = --mCount;
+        mGrid.remove(index);
+        if (mFreeCells != null) {
+            mFreeCells.vacate(mX[index], mY[index]);
+        }
+        int id = mId[index];
+        mIndexOf[id] = NONE;
+        mFreeIds[mFreeIdCount++] = id;
+        if (index != last) {
+            mGrid.remove(last);
+            copy(last, index);
+            mIndexOf[mId[index]] = index;
+            mGrid.insert(index, mX[index], mY[index]);
+        }
+    }
+
+    /**
+     * Gives an entity a weapon, copying the state out of weapon. Only for
+     * stores made with WEAPONS.
+     *
+     * @param index
+     * @param weapon the weapon, or null to take the entity's away
+     */
+    public void arm(int index, Weapon weapon) {
+        if (weapon == null) {
+            disarm(index);
+            return;
+        }
+        mArmed[index] = true;
+        mWeaponName[index] = weapon.getName();
+        mRange[index] = weapon.getRange();
+        mPower[index] = weapon.getPower();
+        mPowerCurve[index] = weapon.getPowerCurve();
+        mAccuracy[index] = weapon.getAccuracy();
+        mCriticalHit[index] = weapon.getCriticalHit();
+        mFireRate[index] = weapon.getFireRatePerTurn();
+        mTargets[index] = weapon.getTargets();
+        mClipSize[index] = weapon.getClipSize();
+        mAmmoInClip[index] = weapon.getAmmoInClip();
+        mAmmo[index] = weapon.getAmmo();
+        mCooldown[index] = weapon.getTurnsUntilNextShot();
+    }
+
+    private void disarm(int index) {
+        mArmed[index] = false;
+        mWeaponName[index] = null;
+        mRange[index] = 0;
+        mPower[index] = 0;
+        mPowerCurve[index] = 0;
+        mAccuracy[index] = 0;
+        mCriticalHit[index] = 0;
+        mFireRate[index] = 0;
+        mTargets[index] = 0;
+        mClipSize[index] = 0;
+        mAmmoInClip[index] = 0;
+        mAmmo[index] = 0;
+        mCooldown[index] = 0;
+    }
+
+    /**
+     * @return whether the store has weapon components at all
+     */
+    public boolean hasWeapons() {
+        return mArmed != null;
+    }
+
+    public boolean isArmed(int index) {
+        return mArmed != null && mArmed[index];
+    }
+
+    public String getWeaponName(int index) {
+        return mWeaponName[index];
+    }
+
+    public void setWeaponName(int index, String weaponName) {
+        mWeaponName[index] = weaponName;
+    }
+
+    public int getRange(int index) {
+        return mRange[index];
+    }
+
+    public void setRange(int index, int range) {
+        mRange[index] = range;
+    }
+
+    public int getPower(int index) {
+        return mPower[index];
+    }
+
+    public void setPower(int index, int power) {
+        mPower[index] = power;
+    }
+
+    public int getPowerCurve(int index) {
+        return mPowerCurve[index];
+    }
+
+    public void setPowerCurve(int index, int powerCurve) {
+        mPowerCurve[index] = powerCurve;
+    }
+
+    public int getAccuracy(int index) {
+        return mAccuracy[index];
+    }
+
+    public void setAccuracy(int index, int accuracy) {
+        mAccuracy[index] = accuracy;
+    }
+
+    public int getCriticalHit(int index) {
+        return mCriticalHit[index];
+    }
+
+    public void setCriticalHit(int index, int criticalHit) {
+        mCriticalHit[index] = criticalHit;
+    }
+
+    public int getFireRate(int index) {
+        return mFireRate[index];
+    }
+
+    public void setFireRate(int index, int fireRate) {
+        mFireRate[index] = fireRate;
+    }
+
+    public int getTargets(int index) {
+        return mTargets[index];
+    }
+
+    public void setTargets(int index, int targets) {
+        mTargets[index] = targets;
+    }
+
+    public int getClipSize(int index) {
+        return mClipSize[index];
+    }
+
+    public void setClipSize(int index, int clipSize) {
+        mClipSize[index] = clipSize;
+    }
+
+    public int getAmmoInClip(int index) {
+        return mAmmoInClip[index];
+    }
+
+    public void setAmmoInClip(int index, int ammoInClip) {
+        mAmmoInClip[index] = ammoInClip;
+    }
+
+    public int getAmmo(int index) {
+        return mAmmo[index];
+    }
+
+    public void setAmmo(int index, int ammo) {
+        mAmmo[index] = ammo;
+    }
+
+    /**
+     * @param index
+     * @return turns until the entity's weapon can fire again
+     */
+    public int getCooldown(int index) {
+        return mCooldown[index];
+    }
+
+    public void setCooldown(int index, int cooldown) {
+        mCooldown[index] = cooldown;
+    }
+
+    /**
+     * Flattens the positions into [x1,y1,x2,y2,...] for storage.
+     *
+     * @return a new array of 2 * size() ints
+     */
+    public int[] toArray() {
+        int[] rawArray = new int[mCount * 2];
+        for (int index = 0; index < mCount; index++) {
+            rawArray[2 * index] = mX[index];
+            rawArray[2 * index + 1] = mY[index];
+        }
+        return rawArray;
+    }
+
+    /**
+     * Replaces every entity with new ones at the positions in a flattened
+     * [x1,y1,x2,y2,...] array.
+     *
+     * @param rawArray
+     */
+    public void fromArray(int[] rawArray) {
+        clear();
+        for (int index = 0; index + 1 < rawArray.length; index += 2) {
+            add(rawArray[index], rawArray[index + 1]);
+        }
+    }
+
+    /**
+     * Copies every component of the entity at from over the one at to.
+     */
+    private void copy(int from, int to) {
+        mId[to] = mId[from];
+        mX[to] = mX[from];
+        mY[to] = mY[from];
+        mHealth[to] = mHealth[from];
+        mAiState[to] = mAiState[from];
+        if (mArmed != null) {
+            mArmed[to] = mArmed[from];
+            mWeaponName[to] = mWeaponName[from];
+            mRange[to] = mRange[from];
+            mPower[to] = mPower[from];
+            mPowerCurve[to] = mPowerCurve[from];
+            mAccuracy[to] = mAccuracy[from];
+            mCriticalHit[to] = mCriticalHit[from];
+            mFireRate[to] = mFireRate[from];
+            mTargets[to] = mTargets[from];
+            mClipSize[to] = mClipSize[from];
+            mAmmoInClip[to] = mAmmoInClip[from];
+            mAmmo[to] = mAmmo[from];
+            mCooldown[to] = mCooldown[from];
+        }
+    }
+
+    private void grow() {
+        int capacity = mX.length * 2;
+        mId = grow(mId, capacity);
+        mIndexOf = grow(mIndexOf, capacity);
+        mFreeIds = grow(mFreeIds, capacity);
+        mX = grow(mX, capacity);
+        mY = grow(mY, capacity);
+        mHealth = grow(mHealth, capacity);
+        byte[] aiState = new byte[capacity];
+        System.arraycopy(mAiState, 0, aiState, 0, mCount);
+        mAiState = aiState;
+        if (mArmed != null) {
+            boolean[] armed = new boolean[capacity];
+            System.arraycopy(mArmed, 0, armed, 0, mCount);
+            mArmed = armed;
+            String[] weaponName = new String[capacity];
+            System.arraycopy(mWeaponName, 0, weaponName, 0, mCount);
+            mWeaponName = weaponName;
+            mRange = grow(mRange, capacity);
+            mPower = grow(mPower, capacity);
+            mPowerCurve = grow(mPowerCurve, capacity);
+            mAccuracy = grow(mAccuracy, capacity);
+            mCriticalHit = grow(mCriticalHit, capacity);
+            mFireRate = grow(mFireRate, capacity);
+            mTargets = grow(mTargets, capacity);
+            mClipSize = grow(mClipSize, capacity);
+            mAmmoInClip = grow(mAmmoInClip, capacity);
+            mAmmo = grow(mAmmo, capacity);
+            mCooldown = grow(mCooldown, capacity);
+        }
+    }
+
+    /**
+     * @return a copy of array, capacity long. Copies the whole array, since
+     * the id arrays are indexed by id rather than by index.
+     */
+    private static int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.snake;
+
+/**
+ * FieldOfView: which tiles can be seen from one tile, out to a radius, with
+ * walls casting shadows. Zombies only notice the player from tiles the player
+ * can see, and the view can leave the rest in the fog.
+ *
+ * Visibility is worked out by recursive shadowcasting: each of the eight
+ * octants around the viewer is scanned row by row outward, and every wall met
+ * narrows the range of slopes still lit beyond it, so each tile in the radius
+ * is looked at about once. Walls themselves are visible.
+ *
+ * The result is cached, and update() only recomputes it when the viewer has
+ * moved or invalidate() says the walls have changed. Visible tiles are kept
+ * as a bitset, one bit per tile, and as a list, so clearing the old field
+ * costs the size of the field rather than of the arena.
+ *
+ */
+public class FieldOfView {
+
+    /**
+     * How each octant's row and column map onto x and y: for octant n, x is
+     * column * XX[n] + row * XY[n] and y is column * YX[n] + row * YY[n].
+     */
+    private static final int[] XX = { 1, 0, 0, -1, -1, 0, 0, 1 };
+    private static final int[] XY = { 0, 1, -1, 0, 0, -1, 1, 0 };
+    private static final int[] YX = { 0, 1, 1, 0, 0, -1, -1, 0 };
+    private static final int[] YY = { 1, 0, 0, 1, -1, 0, 0, -1 };
+
+    private final int mRadius;
+
+    private Level mLevel;
+    private int mWidth;
+    private int mHeight;
+    private int mViewerX = -1;
+    private int mViewerY = -1;
+    private boolean mValid;
+    private int mVersion;
+
+    /**
+     * mVisible: bit (y * mWidth + x) is set for every visible tile
+     * mLit: the same tiles as a list, mLitCount of them
+     */
+    private int[] mVisible = new int[0];
+    private int[] mLit = new int[64];
+    private int mLitCount;
+
+    /**
+     * @param radius how far can be seen, in tiles
+     */
+    public FieldOfView(int radius) {
+        mRadius = radius;
+    }
+
+    public int getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Forgets the field, so the next update() recomputes it. Call it when the
+     * walls change.
+     */
+    public void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Makes the field the one seen from x/y on level, recomputing it only if
+     * the viewer has moved or the field was invalidated since it was last
+     * worked out.
+     *
+     * @param level
+     * @param x
+     * @param y
+     * @return whether the field was recomputed
+     */
+    public boolean update(Level level, int x, int y) {
+        if (mValid && level == mLevel && x == mViewerX && y == mViewerY) {
+            return false;
+        }
+        if (level != mLevel || level.getWidth() != mWidth || level.getHeight() != mHeight) {
+            mLevel = level;
+            mWidth = level.getWidth();
+            mHeight = level.getHeight();
+            int words = (mWidth * mHeight + 31) >> 5;
+            if (mVisible.length < words) {
+                mVisible = new int[words];
+            } else {
+                for (int word = 0; word < words; word++) {
+                    mVisible[word] = 0;
+                }
+            }
+            mLitCount = 0;
+        }
+
+        for (int index = 0; index < mLitCount; index++) {
+            int cell = mLit[index];
+            mVisible[cell >> 5] &= ~(1 << (cell & 31));
+        }
+        mLitCount = 0;
+
+        mViewerX = x;
+        mViewerY = y;
+        light(x, y);
+        for (int octant = 0; octant < 8; octant++) {
+            castLight(1, 1.0f, 0.0f, XX[octant], XY[octant], YX[octant], YY[octant]);
+        }
+        mValid = true;
+        mVersion++;
+        return true;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return whether x/y was visible when the field was last worked out;
+     * nothing off the level is
+     */
+    public boolean isVisible(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return false;
+        }
+        int cell = y * mWidth + x;
+        return (mVisible[cell >> 5] & (1 << (cell & 31))) != 0;
+    }
+
+    /**
+     * @return a number that changes every time the field is recomputed
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the number of tiles visible
+     */
+    public int getVisibleCount() {
+        return mLitCount;
+    }
+
+    /**
+     * Scans one octant from row outward, lighting the tiles between the start
+     * and end slopes and recursing past every wall with the slopes it leaves
+     * lit.
+     */
+    private void castLight(int row, float start, float end, int xx, int xy, int yx, int yy) {
+        if (start < end) {
+            return;
+        }
+        int radiusSquared = mRadius * mRadius;
+        float newStart = 0.0f;
+        for (int distance = row; distance <= mRadius; distance++) {
+            int dy = -distance;
+            boolean blocked = false;
+            for (int dx = -distance; dx <= 0; dx++) {
+                float leftSlope = (dx - 0.5f) / (dy + 0.5f);
+                float rightSlope = (dx + 0.5f) / (dy - 0.5f);
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+
+                int x = mViewerX + dx * xx + dy * xy;
+                int y = mViewerY + dx * yx + dy * yy;
+                if (dx * dx + dy * dy < radiusSquared) {
+                    light(x, y);
+                }
+                boolean wall = mLevel.isWall(x, y);
+                if (blocked) {
+                    if (wall) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (wall && distance < mRadius) {
+                    blocked = true;
+                    castLight(distance + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                break;
+            }
+        }
+    }
+
+    private void light(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return;
+        }
+        int cell = y * mWidth + x;
+        int bit = 1 << (cell & 31);
+        if ((mVisible[cell >> 5] & bit) != 0) {
+            return;
+        }
+        mVisible[cell >> 5] |= bit;
+        if (mLitCount == mLit.length) {
+            int[] lit = new int[mLit.length * 2];
+            System.arraycopy(mLit, 0, lit, 0, mLitCount);
+            mLit = lit;
+        }
+        mLit[mLitCount++] = cell;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.snake;
+
+/**
+ * FlowField: walking distances to the player over the tile grid, shared by
+ * the whole horde. It is worked out once per player move with a breadth-first
+ * search that goes around walls, and then every zombie just steps to a
+ * neighbouring tile that is one step closer.
+ *
+ * Zombies only chase the player from within a fixed number of steps, so the
+ * search never goes further than that. Distances are kept in a window of
+ * (2 * radius + 1) tiles a side centred on the player, which makes a rebuild
+ * cost the same on any size of map, and a rebuild is skipped entirely when
+ * the player hasn't moved.
+ *
+ */
+public class FlowField {
+
+    /**
+     * Distance of tiles the search did not reach.
+     */
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final int mRadius;
+    private final int mSide;
+
+    /**
+     * mDistance: steps from each tile in the window to the source
+     * mQueue: breadth-first search queue, as window indices
+     */
+    private final int[] mDistance;
+    private final int[] mQueue;
+
+    /**
+     * mOriginX/mOriginY: map tile at the top left of the window
+     */
+    private int mOriginX;
+    private int mOriginY;
+
+    private int mSourceX;
+    private int mSourceY;
+    private boolean mValid;
+
+    /**
+     * @param radius furthest number of steps to search from the source
+     */
+    public FlowField(int radius) {
+        mRadius = radius;
+        mSide = 2 * radius + 1;
+        mDistance = new int[mSide * mSide];
+        mQueue = new int[mSide * mSide];
+    }
+
+    public int getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Forces the next rebuild() to search again, for when walls change.
+     */
+    public void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Works out the distance from every tile within the radius to the source,
+     * unless the source is where it was last time.
+     *
+     * @param game the game whose walls to go around
+     * @param sourceX
+     * @param sourceY
+     * @return true if the field was searched again
+     */
+    public boolean rebuild(ZombieGame game, int sourceX, int sourceY) {
+        if (mValid && sourceX == mSourceX && sourceY == mSourceY) {
+            return false;
+        }
+        mValid = true;
+        mSourceX = sourceX;
+        mSourceY = sourceY;
+        mOriginX = sourceX - mRadius;
+        mOriginY = sourceY - mRadius;
+
+        int cells = mSide * mSide;
+        for (int index = 0; index < cells; index++) {
+            mDistance[index] = UNREACHED;
+        }
+
+        int source = mRadius * mSide + mRadius;
+        mDistance[source] = 0;
+        mQueue[0] = source;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int cell = mQueue[head++];
+            int distance = mDistance[cell];
+            if (distance == mRadius) {
+                continue;
+            }
+            int wx = cell % mSide;
+            int wy = cell / mSide;
+            tail = visit(game, wx, wy - 1, distance + 1, tail);
+            tail = visit(game, wx, wy + 1, distance + 1, tail);
+            tail = visit(game, wx + 1, wy, distance + 1, tail);
+            tail = visit(game, wx - 1, wy, distance + 1, tail);
+        }
+        return true;
+    }
+
+    private int visit(ZombieGame game, int wx, int wy, int distance, int tail) {
+        if (wx < 0 || wy < 0 || wx >= mSide || wy >= mSide) {
+            return tail;
+        }
+        int cell = wy * mSide + wx;
+        if (mDistance[cell] != UNREACHED || game.isWall(mOriginX + wx, mOriginY + wy)) {
+            return tail;
+        }
+        mDistance[cell] = distance;
+        mQueue[tail] = cell;
+        return tail + 1;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return steps from x/y to the source, or UNREACHED if it is walled off or
+     * further than the radius
+     */
+    public int distance(int x, int y) {
+        int wx = x - mOriginX;
+        int wy = y - mOriginY;
+        if (!mValid || wx < 0 || wy < 0 || wx >= mSide || wy >= mSide) {
+            return UNREACHED;
+        }
+        return mDistance[wy * mSide + wx];
+    }
+}
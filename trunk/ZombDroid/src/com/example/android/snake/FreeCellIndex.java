@@ -0,0 +1,214 @@
+package com.example.android.snake;
+
+import java.util.Random;
+
+/**
+ * FreeCellIndex: counts what stands on each tile, and keeps the empty tiles
+ * inside a rectangular area in a list, leaving out blocked tiles like walls,
+ * so a random empty tile can be picked in constant time however full the
+ * arena is.
+ *
+ * The list is kept unordered: a tile that fills up is swapped with the last
+ * one in the list and dropped, and a tile that empties is appended, so both
+ * cost the same whatever the size of the list.
+ *
+ */
+public class FreeCellIndex {
+
+    private static final int NONE = -1;
+
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * mLeft/mTop/mRight/mBottom: the area empty tiles are listed for,
+     * inclusive
+     */
+    private int mLeft;
+    private int mTop;
+    private int mRight = -1;
+    private int mBottom = -1;
+
+    /**
+     * mOccupants: how many things stand on each tile (y * mWidth + x)
+     * mFree: the empty tiles in the area, mFreeCount of them
+     * mSlot: where each tile is in mFree, or NONE
+     * mBlocked: tiles that are never free, whatever stands on them
+     */
+    private int[] mOccupants = new int[0];
+    private boolean[] mBlocked = new boolean[0];
+    private int[] mFree = new int[0];
+    private int mFreeCount;
+    private int[] mSlot = new int[0];
+
+    /**
+     * Resizes the index to a width x height arena with nothing on it. The
+     * area is left empty until setArea() is called.
+     *
+     * @param width
+     * @param height
+     */
+    public void resize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        int cells = width * height;
+        if (mOccupants.length < cells) {
+            mOccupants = new int[cells];
+            mFree = new int[cells];
+            mSlot = new int[cells];
+            mBlocked = new boolean[cells];
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            mBlocked[cell] = false;
+        }
+        mLeft = 0;
+        mTop = 0;
+        mRight = -1;
+        mBottom = -1;
+        clear();
+    }
+
+    /**
+     * Marks x/y as never free, for walls. Blocks last until the next
+     * resize().
+     *
+     * @param x
+     * @param y
+     */
+    public void block(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return;
+        }
+        int cell = y * mWidth + x;
+        mBlocked[cell] = true;
+        if (mSlot[cell] != NONE) {
+            removeFree(cell);
+        }
+    }
+
+    /**
+     * Empties every tile, keeping the size, the area and the blocks.
+     */
+    public void clear() {
+        int cells = mWidth * mHeight;
+        for (int cell = 0; cell < cells; cell++) {
+            mOccupants[cell] = 0;
+        }
+        rebuild();
+    }
+
+    /**
+     * Sets the area whose empty tiles can be picked, clipped to the arena.
+     *
+     * @param left
+     * @param top
+     * @param right inclusive; less than left for no area at all
+     * @param bottom inclusive
+     */
+    public void setArea(int left, int top, int right, int bottom) {
+        mLeft = Math.max(0, left);
+        mTop = Math.max(0, top);
+        mRight = Math.min(mWidth - 1, right);
+        mBottom = Math.min(mHeight - 1, bottom);
+        rebuild();
+    }
+
+    /**
+     * Notes one more thing standing on x/y. Positions off the arena are
+     * ignored.
+     *
+     * @param x
+     * @param y
+     */
+    public void occupy(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return;
+        }
+        int cell = y * mWidth + x;
+        if (mOccupants[cell]++ == 0 && mSlot[cell] != NONE) {
+            removeFree(cell);
+        }
+    }
+
+    /**
+     * Notes one thing fewer standing on x/y.
+     *
+     * @param x
+     * @param y
+     */
+    public void vacate(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return;
+        }
+        int cell = y * mWidth + x;
+        if (mOccupants[cell] == 0) {
+            return;
+        }
+        if (--mOccupants[cell] == 0 && !mBlocked[cell] && inArea(x, y)) {
+            mSlot[cell] = mFreeCount;
+            mFree[mFreeCount++] = cell;
+        }
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return whether nothing stands on x/y
+     */
+    public boolean isFree(int x, int y) {
+        return x >= 0 && y >= 0 && x < mWidth && y < mHeight
+                && mOccupants[y * mWidth + x] == 0 && !mBlocked[y * mWidth + x];
+    }
+
+    /**
+     * @return the number of empty tiles in the area
+     */
+    public int getFreeCount() {
+        return mFreeCount;
+    }
+
+    /**
+     * Picks an empty tile in the area, every one equally likely.
+     *
+     * @param random
+     * @return the tile as y * width + x, or -1 if the area is full
+     */
+    public int pickFree(Random random) {
+        if (mFreeCount == 0) {
+            return NONE;
+        }
+        return mFree[random.nextInt(mFreeCount)];
+    }
+
+    private void removeFree(int cell) {
+        int slot = mSlot[cell];
+        int last = mFree[--mFreeCount];
+        mFree[slot] = last;
+        mSlot[last] = slot;
+        mSlot[cell] = NONE;
+    }
+
+    private boolean inArea(int x, int y) {
+        return x >= mLeft && x <= mRight && y >= mTop && y <= mBottom;
+    }
+
+    /**
+     * Lists the empty tiles in the area from scratch.
+     */
+    private void rebuild() {
+        int cells = mWidth * mHeight;
+        for (int cell = 0; cell < cells; cell++) {
+            mSlot[cell] = NONE;
+        }
+        mFreeCount = 0;
+        for (int y = mTop; y <= mBottom; y++) {
+            for (int x = mLeft; x <= mRight; x++) {
+                int cell = y * mWidth + x;
+                if (mOccupants[cell] == 0 && !mBlocked[cell]) {
+                    mSlot[cell] = mFreeCount;
+                    mFree[mFreeCount++] = cell;
+                }
+            }
+        }
+    }
+}
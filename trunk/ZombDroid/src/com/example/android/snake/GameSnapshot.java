@@ -0,0 +1,482 @@
+package com.example.android.snake;
+
+import java.util.Arrays;
+
+/**
+ * GameSnapshot: packs the whole state of a ZombieGame, survivors and their
+ * weapons included, into a small byte array and back. It is what SnakeView
+ * keeps in its saved Bundle, where a raw int[] pair per zombie gets too big
+ * for the binder once hordes grow.
+ *
+ * Numbers are written as varints, 7 bits a byte, with signed ones zigzag
+ * encoded first so small negatives stay small. Each survivor's position is
+ * stored as the difference from the one before, followed by the rest of its
+ * components. Zombies are stored as cells of the smallest box around the
+ * horde, either as the gaps between occupied cells in order, or, when the
+ * horde is dense enough for it to be smaller, as one bit per cell of the
+ * box, followed by their health as runs of equal values.
+ *
+ * A survivor's weapon is saved as the EntityStore holds it: its name and
+ * combat state. The rest of a Weapon (set-up and reload times, ammo types)
+ * and the other weapons a Human carries aren't kept by the store, so they
+ * aren't saved either.
+ *
+ * Every snapshot starts with two magic bytes and the VERSION it was written
+ * with, so the format can change without misreading old data.
+ *
+ */
+public class GameSnapshot {
+
+    /**
+     * Version of the format written by save(), and the only one restore()
+     * reads.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte MAGIC_0 = 'Z';
+    private static final byte MAGIC_1 = 'S';
+
+    /**
+     * Ways of storing the horde, see the class comment.
+     */
+    private static final int ZOMBIES_GAPS = 0;
+    private static final int ZOMBIES_BITSET = 1;
+
+    /**
+     * mBuffer: bytes being written, of which mLength are in use
+     * mInput: snapshot being read, up to mPosition so far
+     * mCells: scratch space for the horde's cells, sorted
+     * mKeys: scratch space for sorting the horde, cell << 32 | index
+     * mOrder: indices of the horde in the order restore() adds them back
+     */
+    private byte[] mBuffer = new byte[256];
+    private int mLength;
+    private byte[] mInput;
+    private int mPosition;
+    private int[] mCells = new int[64];
+    private long[] mKeys = new long[64];
+    private int[] mOrder = new int[64];
+
+    /**
+     * Writes a snapshot of the game.
+     *
+     * @param game
+     * @return a new array holding the snapshot
+     */
+    public byte[] save(ZombieGame game) {
+        mLength = 0;
+        writeByte(MAGIC_0);
+        writeByte(MAGIC_1);
+        writeVarint(VERSION);
+
+        writeVarint(game.getWidth());
+        writeVarint(game.getHeight());
+        writeVarint(game.getMode());
+        writeVarint(game.getDirection());
+        writeVarlong(game.getMoveDelay());
+        writeVarlong(game.getScore());
+
+        writeSurvivors(game.getSurvivors(), game.getPlayerIndex());
+        writeZombies(game.getZombies());
+
+        byte[] data = new byte[mLength];
+        System.arraycopy(mBuffer, 0, data, 0, mLength);
+        return data;
+    }
+
+    /**
+     * Replaces the state of the game with a snapshot written by save(). The
+     * game is sized to the arena it was saved on.
+     *
+     * @param game
+     * @param data
+     * @throws IllegalArgumentException if data isn't a snapshot this version
+     * can read
+     */
+    public void restore(ZombieGame game, byte[] data) {
+        mInput = data;
+        mPosition = 0;
+        try {
+            if (readByte() != MAGIC_0 || readByte() != MAGIC_1) {
+                throw new IllegalArgumentException("not a game snapshot");
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported snapshot version " + version);
+            }
+
+            int width = readVarint();
+            int height = readVarint();
+            int mode = readVarint();
+            game.getSurvivors().clear();
+            game.getZombies().clear();
+            game.resize(width, height);
+            game.setMode(mode);
+            game.setDirection(readVarint());
+            game.setMoveDelay(readVarlong());
+            game.setScore(readVarlong());
+
+            EntityStore survivors = game.getSurvivors();
+            int player = readSurvivors(survivors);
+            game.setPlayerId(player == EntityStore.NONE ? player : survivors.getId(player));
+            readZombies(game.getZombies());
+            readZombieHealth(game.getZombies());
+        } finally {
+            mInput = null;
+        }
+    }
+
+    /**
+     * Survivors are the player's index + 1 (0 for none), their count, then
+     * each one's position relative to the last, health and weapon.
+     */
+    private void writeSurvivors(EntityStore survivors, int player) {
+        writeVarint(player + 1);
+        int count = survivors.size();
+        writeVarint(count);
+        int lastX = 0;
+        int lastY = 0;
+        for (int index = 0; index < count; index++) {
+            writeSigned(survivors.getX(index) - lastX);
+            writeSigned(survivors.getY(index) - lastY);
+            lastX = survivors.getX(index);
+            lastY = survivors.getY(index);
+            writeSigned(survivors.getHealth(index));
+            boolean armed = survivors.isArmed(index);
+            writeVarint(armed ? 1 : 0);
+            if (armed) {
+                writeString(survivors.getWeaponName(index));
+                writeSigned(survivors.getRange(index));
+                writeSigned(survivors.getPower(index));
+                writeSigned(survivors.getPowerCurve(index));
+                writeSigned(survivors.getAccuracy(index));
+                writeSigned(survivors.getCriticalHit(index));
+                writeSigned(survivors.getFireRate(index));
+                writeSigned(survivors.getTargets(index));
+                writeSigned(survivors.getClipSize(index));
+                writeSigned(survivors.getAmmoInClip(index));
+                writeSigned(survivors.getAmmo(index));
+                writeSigned(survivors.getCooldown(index));
+            }
+        }
+    }
+
+    /**
+     * @return the index of the player, or EntityStore.NONE
+     */
+    private int readSurvivors(EntityStore survivors) {
+        int player = readVarint() - 1;
+        int count = readVarint();
+        if (player < -1 || player >= count) {
+            throw new IllegalArgumentException("bad player " + player + " of " + count);
+        }
+        int x = 0;
+        int y = 0;
+        for (int survivor = 0; survivor < count; survivor++) {
+            x += readSigned();
+            y += readSigned();
+            int index = survivors.add(x, y);
+            survivors.setHealth(index, readSigned());
+            if (readVarint() != 0) {
+                Weapon weapon = new Weapon();
+                weapon.setName(readString());
+                weapon.setRange(readSigned());
+                weapon.setPower(readSigned());
+                weapon.setPowerCurve(readSigned());
+                weapon.setAccuracy(readSigned());
+                weapon.setCriticalHit(readSigned());
+                weapon.setFireRatePerTurn(readSigned());
+                weapon.setTargets(readSigned());
+                weapon.setClipSize(readSigned());
+                weapon.setAmmoInClip(readSigned());
+                weapon.setAmmo(readSigned());
+                weapon.setTurnsUntilNextShot(readSigned());
+                survivors.arm(index, weapon);
+            }
+        }
+        return player;
+    }
+
+    private void writeZombies(EntityStore zombies) {
+        int count = zombies.size();
+        writeVarint(count);
+        if (count == 0) {
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int index = 0; index < count; index++) {
+            minX = Math.min(minX, zombies.getX(index));
+            minY = Math.min(minY, zombies.getY(index));
+            maxX = Math.max(maxX, zombies.getX(index));
+            maxY = Math.max(maxY, zombies.getY(index));
+        }
+        int boxWidth = maxX - minX + 1;
+        int boxHeight = maxY - minY + 1;
+
+        if (mCells.length < count) {
+            int capacity = Math.max(count, mCells.length * 2);
+            mCells = new int[capacity];
+            mKeys = new long[capacity];
+            mOrder = new int[capacity];
+        }
+        for (int index = 0; index < count; index++) {
+            long cell = (zombies.getY(index) - minY) * boxWidth + zombies.getX(index) - minX;
+            mKeys[index] = cell << 32 | index;
+        }
+        Arrays.sort(mKeys, 0, count);
+        for (int index = 0; index < count; index++) {
+            mCells[index] = (int) (mKeys[index] >>> 32);
+        }
+
+        // Work out which way is smaller: gaps cost a varint per zombie, the
+        // bitset a bit per cell plus a gap per zombie sharing a cell
+        long gapBytes = 0;
+        long sharedBytes = 0;
+        int shared = 0;
+        int last = 0;
+        int lastShared = 0;
+        for (int index = 0; index < count; index++) {
+            gapBytes += varintSize(mCells[index] - last);
+            if (index > 0 && mCells[index] == mCells[index - 1]) {
+                sharedBytes += varintSize(mCells[index] - lastShared);
+                lastShared = mCells[index];
+                shared++;
+            }
+            last = mCells[index];
+        }
+        long bitsetBytes = ((long) boxWidth * boxHeight + 7) / 8 + varintSize(shared) + sharedBytes;
+        int encoding = bitsetBytes < gapBytes ? ZOMBIES_BITSET : ZOMBIES_GAPS;
+
+        writeVarint(encoding);
+        writeSigned(minX);
+        writeSigned(minY);
+        writeVarint(boxWidth);
+        writeVarint(boxHeight);
+
+        if (encoding == ZOMBIES_GAPS) {
+            last = 0;
+            for (int index = 0; index < count; index++) {
+                writeVarint(mCells[index] - last);
+                last = mCells[index];
+                mOrder[index] = (int) mKeys[index];
+            }
+            writeZombieHealth(zombies, count);
+            return;
+        }
+
+        int bitsetLength = (int) (((long) boxWidth * boxHeight + 7) / 8);
+        ensureCapacity(mLength + bitsetLength);
+        Arrays.fill(mBuffer, mLength, mLength + bitsetLength, (byte) 0);
+        for (int index = 0; index < count; index++) {
+            int cell = mCells[index];
+            mBuffer[mLength + (cell >> 3)] |= 1 << (cell & 7);
+        }
+        mLength += bitsetLength;
+
+        writeVarint(shared);
+        lastShared = 0;
+        for (int index = 1; index < count; index++) {
+            if (mCells[index] == mCells[index - 1]) {
+                writeVarint(mCells[index] - lastShared);
+                lastShared = mCells[index];
+            }
+        }
+
+        // restore() adds a zombie per set bit first, then the shared ones
+        int ordered = 0;
+        for (int index = 0; index < count; index++) {
+            if (index == 0 || mCells[index] != mCells[index - 1]) {
+                mOrder[ordered++] = (int) mKeys[index];
+            }
+        }
+        for (int index = 1; index < count; index++) {
+            if (mCells[index] == mCells[index - 1]) {
+                mOrder[ordered++] = (int) mKeys[index];
+            }
+        }
+        writeZombieHealth(zombies, count);
+    }
+
+    /**
+     * Writes the health of the zombies in mOrder as runs of a count and a
+     * value, which is a couple of bytes for a horde that hasn't been hurt.
+     */
+    private void writeZombieHealth(EntityStore zombies, int count) {
+        int index = 0;
+        while (index < count) {
+            int health = zombies.getHealth(mOrder[index]);
+            int run = 1;
+            while (index + run < count && zombies.getHealth(mOrder[index + run]) == health) {
+                run++;
+            }
+            writeVarint(run);
+            writeSigned(health);
+            index += run;
+        }
+    }
+
+    private void readZombieHealth(EntityStore zombies) {
+        int count = zombies.size();
+        int index = 0;
+        while (index < count) {
+            int run = readVarint();
+            int health = readSigned();
+            if (run <= 0 || run > count - index) {
+                throw new IllegalArgumentException("bad health run " + run + " at " + index);
+            }
+            for (int end = index + run; index < end; index++) {
+                zombies.setHealth(index, health);
+            }
+        }
+    }
+
+    private void readZombies(EntityStore zombies) {
+        int count = readVarint();
+        if (count == 0) {
+            return;
+        }
+        int encoding = readVarint();
+        int minX = readSigned();
+        int minY = readSigned();
+        int boxWidth = readVarint();
+        int boxHeight = readVarint();
+        if (boxWidth < 1 || boxHeight < 1) {
+            throw new IllegalArgumentException("bad zombie box " + boxWidth + "x" + boxHeight);
+        }
+
+        if (encoding == ZOMBIES_GAPS) {
+            int cell = 0;
+            for (int index = 0; index < count; index++) {
+                cell += readVarint();
+                zombies.add(minX + cell % boxWidth, minY + cell / boxWidth);
+            }
+            return;
+        }
+        if (encoding != ZOMBIES_BITSET) {
+            throw new IllegalArgumentException("unknown zombie encoding " + encoding);
+        }
+
+        long bitsetLength = ((long) boxWidth * boxHeight + 7) / 8;
+        if (mPosition + bitsetLength > mInput.length) {
+            throw new IllegalArgumentException("truncated snapshot");
+        }
+        for (int offset = 0; offset < bitsetLength; offset++) {
+            int bits = mInput[mPosition + offset] & 0xff;
+            while (bits != 0) {
+                int cell = (offset << 3) + Integer.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                zombies.add(minX + cell % boxWidth, minY + cell / boxWidth);
+            }
+        }
+        mPosition += bitsetLength;
+
+        int shared = readVarint();
+        int cell = 0;
+        for (int index = 0; index < shared; index++) {
+            cell += readVarint();
+            zombies.add(minX + cell % boxWidth, minY + cell / boxWidth);
+        }
+        if (zombies.size() != count) {
+            throw new IllegalArgumentException("expected " + count + " zombies, found "
+                    + zombies.size());
+        }
+    }
+
+    /**
+     * Strings are their length plus one (0 for null), then a varint per char.
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        writeVarint(value.length() + 1);
+        for (int index = 0; index < value.length(); index++) {
+            writeVarint(value.charAt(index));
+        }
+    }
+
+    private String readString() {
+        int length = readVarint() - 1;
+        if (length < 0) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder(length);
+        for (int index = 0; index < length; index++) {
+            value.append((char) readVarint());
+        }
+        return value.toString();
+    }
+
+    private void writeSigned(int value) {
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    private int readSigned() {
+        int value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void writeVarint(int value) {
+        writeVarlong(value & 0xffffffffL);
+    }
+
+    private int readVarint() {
+        return (int) readVarlong();
+    }
+
+    private void writeVarlong(long value) {
+        ensureCapacity(mLength + 10);
+        while ((value & ~0x7fL) != 0) {
+            mBuffer[mLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mBuffer[mLength++] = (byte) value;
+    }
+
+    private long readVarlong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("bad varint in snapshot");
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(mLength + 1);
+        mBuffer[mLength++] = (byte) value;
+    }
+
+    private int readByte() {
+        if (mPosition >= mInput.length) {
+            throw new IllegalArgumentException("truncated snapshot");
+        }
+        return mInput[mPosition++];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mBuffer.length) {
+            return;
+        }
+        byte[] buffer = new byte[Math.max(capacity, mBuffer.length * 2)];
+        System.arraycopy(mBuffer, 0, buffer, 0, mLength);
+        mBuffer = buffer;
+    }
+}
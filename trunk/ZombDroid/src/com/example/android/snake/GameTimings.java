@@ -0,0 +1,116 @@
+package com.example.android.snake;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GameTimings: where the time goes in a running game. Each phase of a tick,
+ * whole ticks and frame draws have a TimingHistogram, and a couple of gauges
+ * track the horde size and frames the loop fell too far behind to run on
+ * time.
+ *
+ * Everything can be recorded from any thread without locking, so the same
+ * GameTimings can be shared by the game, the view and whichever loop drives
+ * them.
+ *
+ */
+public class GameTimings {
+
+    /**
+     * Phases timed. COMBAT is every survivor's shooting, TICK is the whole
+     * of ZombieGame.step(), and INPUT is how long each key press waited for
+     * the tick that took it.
+     */
+    public static final int WALLS = 0;
+    public static final int ZOMBIES = 1;
+    public static final int PLAYER = 2;
+    public static final int COMBAT = 3;
+    public static final int TICK = 4;
+    public static final int DRAW = 5;
+    public static final int INPUT = 6;
+    public static final int PHASES = 7;
+
+    private static final String[] PHASE_NAMES = {
+        "walls", "zombies", "player", "combat", "tick", "draw", "input"
+    };
+
+    private final TimingHistogram[] mHistograms = new TimingHistogram[PHASES];
+    private final AtomicInteger mMissedFrames = new AtomicInteger();
+    private volatile int mHordeSize;
+
+    public GameTimings() {
+        for (int phase = 0; phase < PHASES; phase++) {
+            mHistograms[phase] = new TimingHistogram();
+        }
+    }
+
+    /**
+     * @param phase one of WALLS to INPUT
+     * @param nanos how long it took
+     */
+    public void record(int phase, long nanos) {
+        mHistograms[phase].record(nanos);
+    }
+
+    public TimingHistogram getHistogram(int phase) {
+        return mHistograms[phase];
+    }
+
+    /**
+     * Counts frames the game loop ran too late for.
+     *
+     * @param frames
+     */
+    public void addMissedFrames(int frames) {
+        mMissedFrames.addAndGet(frames);
+    }
+
+    public int getMissedFrames() {
+        return mMissedFrames.get();
+    }
+
+    public void setHordeSize(int hordeSize) {
+        mHordeSize = hordeSize;
+    }
+
+    public int getHordeSize() {
+        return mHordeSize;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        for (int phase = 0; phase < PHASES; phase++) {
+            mHistograms[phase].reset();
+        }
+        mMissedFrames.set(0);
+    }
+
+    /**
+     * Writes a summary line per phase followed by its buckets, as plain text
+     * that is easy to diff between builds:
+     *
+     *   phase <name> count <n> p50 <ns> p90 <ns> p99 <ns> max <ns>
+     *   <bucket start ns> <count>
+     *   ...
+     *
+     * @param writer
+     */
+    public void writeTo(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("missed " + getMissedFrames() + " horde " + getHordeSize());
+        for (int phase = 0; phase < PHASES; phase++) {
+            TimingHistogram histogram = mHistograms[phase];
+            out.println("phase " + PHASE_NAMES[phase]
+                    + " count " + histogram.getCount()
+                    + " p50 " + histogram.getPercentile(0.5)
+                    + " p90 " + histogram.getPercentile(0.9)
+                    + " p99 " + histogram.getPercentile(0.99)
+                    + " max " + histogram.getMax());
+            histogram.writeBuckets(out);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.android.snake;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * InputLog: everything needed to play a seeded game again, which is the seed,
+ * the size and hash of the level and the direction the player was heading on
+ * each tick. Only the ticks where the direction changed are kept. Once the
+ * game is over the log also holds how many ticks it ran and the hash of the
+ * state it ended in, so a Replayer can check it got the same result.
+ *
+ * The level itself isn't kept, only Level.hash(), so a replay of a game
+ * played on anything but a plain arena needs the same level handed to it.
+ *
+ */
+public class InputLog {
+
+    /**
+     * Version written at the start of the log by writeTo().
+     */
+    public static final int VERSION = 1;
+
+    private boolean mRecording;
+    private long mSeed;
+    private int mWidth;
+    private int mHeight;
+    private long mLevelHash;
+
+    /**
+     * mTicks/mDirections: tick at which the player turned and the direction
+     * they turned to, in order, mCount of each in use
+     */
+    private long[] mTicks = new long[64];
+    private int[] mDirections = new int[64];
+    private int mCount;
+
+    /**
+     * mEndTick: number of ticks the game ran, or -1 while it is still going
+     * mEndHash: ZombieGame.stateHash() at the end of the game
+     */
+    private long mEndTick = -1;
+    private long mEndHash;
+
+    /**
+     * Forgets any previous game and starts recording a new one.
+     *
+     * @param seed what the game was seeded with through ZombieGame.setSeed()
+     * @param level what the game is played on
+     */
+    public void start(long seed, Level level) {
+        mRecording = true;
+        mSeed = seed;
+        mWidth = level.getWidth();
+        mHeight = level.getHeight();
+        mLevelHash = level.hash();
+        mCount = 0;
+        mEndTick = -1;
+        mEndHash = 0;
+    }
+
+    /**
+     * Stops recording without finishing, for when the game was changed in a
+     * way a replay can't reproduce, such as being restored from saved state.
+     */
+    public void abandon() {
+        mRecording = false;
+    }
+
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    /**
+     * Notes the direction the player is heading on a tick, if it changed.
+     *
+     * @param tick ZombieGame.getTick() before the step
+     * @param direction the direction passed to ZombieGame.step()
+     */
+    public void record(long tick, int direction) {
+        if (!mRecording || (mCount > 0 && mDirections[mCount - 1] == direction)) {
+            return;
+        }
+        if (mCount == mTicks.length) {
+            long[] ticks = new long[mCount * 2];
+            int[] directions = new int[mCount * 2];
+            System.arraycopy(mTicks, 0, ticks, 0, mCount);
+            System.arraycopy(mDirections, 0, directions, 0, mCount);
+            mTicks = ticks;
+            mDirections = directions;
+        }
+        mTicks[mCount] = tick;
+        mDirections[mCount] = direction;
+        mCount++;
+    }
+
+    /**
+     * Marks the game as over and stops recording.
+     *
+     * @param tick ZombieGame.getTick() at the end
+     * @param hash ZombieGame.stateHash() at the end
+     */
+    public void finish(long tick, long hash) {
+        if (!mRecording) {
+            return;
+        }
+        mRecording = false;
+        mEndTick = tick;
+        mEndHash = hash;
+    }
+
+    public boolean isFinished() {
+        return mEndTick >= 0;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return Level.hash() of the level the game was played on
+     */
+    public long getLevelHash() {
+        return mLevelHash;
+    }
+
+    /**
+     * @return the number of direction changes recorded
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public long getTick(int index) {
+        return mTicks[index];
+    }
+
+    public int getDirection(int index) {
+        return mDirections[index];
+    }
+
+    public long getEndTick() {
+        return mEndTick;
+    }
+
+    public long getEndHash() {
+        return mEndHash;
+    }
+
+    /**
+     * Writes a finished log.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(VERSION);
+        data.writeLong(mSeed);
+        data.writeInt(mWidth);
+        data.writeInt(mHeight);
+        data.writeLong(mLevelHash);
+        data.writeLong(mEndTick);
+        data.writeLong(mEndHash);
+        data.writeInt(mCount);
+        for (int index = 0; index < mCount; index++) {
+            data.writeLong(mTicks[index]);
+            data.writeByte(mDirections[index]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a log written by writeTo().
+     *
+     * @param in
+     * @return the log, not recording
+     * @throws IOException if the log can't be read or is from a newer version
+     */
+    public static InputLog readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported input log version " + version);
+        }
+        InputLog log = new InputLog();
+        log.mSeed = data.readLong();
+        log.mWidth = data.readInt();
+        log.mHeight = data.readInt();
+        log.mLevelHash = data.readLong();
+        log.mEndTick = data.readLong();
+        log.mEndHash = data.readLong();
+        int count = data.readInt();
+        log.mTicks = new long[Math.max(count, 1)];
+        log.mDirections = new int[Math.max(count, 1)];
+        for (int index = 0; index < count; index++) {
+            log.mTicks[index] = data.readLong();
+            log.mDirections[index] = data.readByte();
+        }
+        log.mCount = count;
+        return log;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.snake;
+
+/**
+ * InputQueue: the player's key presses waiting for the next tick, oldest
+ * first, each with the time it was made. Presses made between two ticks are
+ * kept, so a quick up-then-left isn't lost to the left, and the tick that
+ * takes a press knows how long it waited.
+ *
+ * The queue is a ring buffer for exactly one thread putting presses in (the
+ * UI thread) and one taking them out (whichever thread ticks). Each side only
+ * writes its own index, and the indices are volatile, so neither side ever
+ * locks or waits for the other, and nothing is allocated after construction.
+ * When the ring is full, new presses are dropped.
+ *
+ */
+public class InputQueue {
+
+    /**
+     * Returned by take() when there is nothing queued.
+     */
+    public static final int EMPTY = -1;
+
+    private final int mMask;
+    private final int[] mDirections;
+    private final long[] mTimes;
+
+    /**
+     * mHead: how many presses have been taken, written by the consumer
+     * mTail: how many presses have been put in, written by the producer
+     * mTakenTime: when the last press take() returned was made
+     */
+    private volatile int mHead;
+    private volatile int mTail;
+    private long mTakenTime;
+
+    /**
+     * @param capacity most presses held at once, rounded up to a power of
+     * two
+     */
+    public InputQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mDirections = new int[size];
+        mTimes = new long[size];
+    }
+
+    /**
+     * Queues a press. Only the producer thread may call this.
+     *
+     * @param direction
+     * @param nanos when it was made, from System.nanoTime()
+     * @return false if the queue was full and the press was dropped
+     */
+    public boolean offer(int direction, long nanos) {
+        int tail = mTail;
+        if (tail - mHead > mMask) {
+            return false;
+        }
+        mDirections[tail & mMask] = direction;
+        mTimes[tail & mMask] = nanos;
+        mTail = tail + 1;
+        return true;
+    }
+
+    /**
+     * Takes the oldest press. Only the consumer thread may call this.
+     *
+     * @return its direction, or EMPTY if there is none
+     */
+    public int take() {
+        int head = mHead;
+        if (head == mTail) {
+            return EMPTY;
+        }
+        int direction = mDirections[head & mMask];
+        mTakenTime = mTimes[head & mMask];
+        mHead = head + 1;
+        return direction;
+    }
+
+    /**
+     * @return when the press last returned by take() was made
+     */
+    public long getTakenTime() {
+        return mTakenTime;
+    }
+
+    /**
+     * @return whether there is anything to take; safe from either thread
+     */
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+
+    /**
+     * @return the number of presses waiting; safe from either thread, though
+     * it may be out of date by the time it returns
+     */
+    public int size() {
+        return mTail - mHead;
+    }
+
+    /**
+     * Drops everything queued. Only the consumer thread may call this.
+     */
+    public void clear() {
+        mHead = mTail;
+    }
+}
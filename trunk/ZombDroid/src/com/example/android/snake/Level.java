@@ -0,0 +1,353 @@
+package com.example.android.snake;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Level: the layout of an arena, which is a tile for every square and where
+ * the player starts. Any tile other than FLOOR is solid. Which tiles are
+ * solid is also packed into a bitset, one bit per tile, so checking a move
+ * against the walls costs the same however complicated the level is.
+ *
+ * Levels are stored in a compact binary format, read in one go:
+ *
+ *   'Z' 'L' version width height startX startY (tiles)
+ *
+ * where the numbers are varints and the tiles, row by row from the top left,
+ * are runs of a varint count followed by the tile byte.
+ *
+ */
+public class Level {
+
+    /**
+     * Version of the format written by writeTo().
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Tiles: open floor, and the plain wall. Other tile values are walls that
+     * may be drawn differently.
+     */
+    public static final int FLOOR = 0;
+    public static final int WALL = 1;
+
+    private static final byte MAGIC_0 = 'Z';
+    private static final byte MAGIC_1 = 'L';
+
+    /**
+     * FNV-1a, as ZombieGame.stateHash() uses.
+     */
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStartX;
+    private final int mStartY;
+
+    /**
+     * mTiles: tile of each square, y * mWidth + x
+     * mWalls: bit (y * mWidth + x) is set for every solid square
+     */
+    private final byte[] mTiles;
+    private final int[] mWalls;
+
+    /**
+     * Makes an open level of FLOOR tiles. Use setTile() to lay it out.
+     *
+     * @param width
+     * @param height
+     * @param startX where the player starts
+     * @param startY
+     */
+    public Level(int width, int height, int startX, int startY) {
+        mWidth = Math.max(0, width);
+        mHeight = Math.max(0, height);
+        mStartX = startX;
+        mStartY = startY;
+        mTiles = new byte[mWidth * mHeight];
+        mWalls = new int[(mWidth * mHeight + 31) >> 5];
+    }
+
+    /**
+     * Makes the classic arena: open floor with a one tile wall all around,
+     * and the player starting near the bottom.
+     *
+     * @param width
+     * @param height
+     * @return a new level
+     */
+    public static Level border(int width, int height) {
+        Level level = new Level(width, height, Math.min(12, width - 2), height - 2);
+        for (int x = 0; x < width; x++) {
+            level.setTile(x, 0, WALL);
+            level.setTile(x, height - 1, WALL);
+        }
+        for (int y = 0; y < height; y++) {
+            level.setTile(0, y, WALL);
+            level.setTile(width - 1, y, WALL);
+        }
+        return level;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getStartX() {
+        return mStartX;
+    }
+
+    public int getStartY() {
+        return mStartY;
+    }
+
+    /**
+     * Hashes the size, the start and every tile, so an InputLog can tell
+     * which level it was recorded on.
+     *
+     * @return the hash, the same for any two levels laid out the same
+     */
+    public long hash() {
+        long hash = HASH_OFFSET;
+        int[] header = { mWidth, mHeight, mStartX, mStartY };
+        for (int index = 0; index < header.length; index++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                hash ^= (header[index] >>> shift) & 0xff;
+                hash *= HASH_PRIME;
+            }
+        }
+        for (int cell = 0; cell < mTiles.length; cell++) {
+            hash ^= mTiles[cell] & 0xff;
+            hash *= HASH_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return the tile at x/y, or WALL off the level
+     */
+    public int getTile(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return WALL;
+        }
+        return mTiles[y * mWidth + x] & 0xff;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param tile FLOOR, WALL or another wall tile up to 255
+     */
+    public void setTile(int x, int y, int tile) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return;
+        }
+        int cell = y * mWidth + x;
+        mTiles[cell] = (byte) tile;
+        if (tile == FLOOR) {
+            mWalls[cell >> 5] &= ~(1 << (cell & 31));
+        } else {
+            mWalls[cell >> 5] |= 1 << (cell & 31);
+        }
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return whether x/y can't be walked on; everything off the level is
+     * solid
+     */
+    public boolean isWall(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return true;
+        }
+        int cell = y * mWidth + x;
+        return (mWalls[cell >> 5] & (1 << (cell & 31))) != 0;
+    }
+
+    /**
+     * Checks whether a shot from one square to another would hit a wall, by
+     * walking the squares in between along a Bresenham line and testing each
+     * against the wall bitset. The squares at either end don't count, so a
+     * square is always clear to itself.
+     *
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     * @return true if no square strictly between the two is solid
+     */
+    public boolean isClear(int fromX, int fromY, int toX, int toY) {
+        if (fromX == toX && fromY == toY) {
+            return true;
+        }
+        int dx = Math.abs(toX - fromX);
+        int dy = -Math.abs(toY - fromY);
+        int stepX = fromX < toX ? 1 : -1;
+        int stepY = fromY < toY ? 1 : -1;
+        int error = dx + dy;
+        int x = fromX;
+        int y = fromY;
+        while (true) {
+            int doubled = 2 * error;
+            if (doubled >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (doubled <= dx) {
+                error += dx;
+                y += stepY;
+            }
+            if (x == toX && y == toY) {
+                return true;
+            }
+            if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+                return false;
+            }
+            int cell = y * mWidth + x;
+            if ((mWalls[cell >> 5] & (1 << (cell & 31))) != 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads a level from a stream, all of it into one buffer first.
+     *
+     * @param in
+     * @return the level
+     * @throws IOException if the stream can't be read or isn't a level this
+     * version understands
+     */
+    public static Level read(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        int length = 0;
+        int count;
+        while ((count = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += count;
+            if (length == buffer.length) {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, length);
+                buffer = bigger;
+            }
+        }
+        return parse(buffer, length);
+    }
+
+    /**
+     * Reads a level from the first length bytes of data.
+     *
+     * @param data
+     * @param length
+     * @return the level
+     * @throws IOException if data isn't a level this version understands
+     */
+    public static Level parse(byte[] data, int length) throws IOException {
+        Parser parser = new Parser(data, length);
+        if (parser.readByte() != MAGIC_0 || parser.readByte() != MAGIC_1) {
+            throw new IOException("not a level");
+        }
+        int version = parser.readVarint();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported level version " + version);
+        }
+        int width = parser.readVarint();
+        int height = parser.readVarint();
+        if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE / 2) {
+            throw new IOException("bad level size " + width + "x" + height);
+        }
+        int startX = parser.readVarint();
+        int startY = parser.readVarint();
+        Level level = new Level(width, height, startX, startY);
+
+        int cells = width * height;
+        int cell = 0;
+        while (cell < cells) {
+            int run = parser.readVarint();
+            int tile = parser.readByte() & 0xff;
+            if (run <= 0 || run > cells - cell) {
+                throw new IOException("bad tile run " + run + " at " + cell);
+            }
+            for (int end = cell + run; cell < end; cell++) {
+                level.setTile(cell % width, cell / width, tile);
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Writes the level in the format read().
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        writeVarint(out, VERSION);
+        writeVarint(out, mWidth);
+        writeVarint(out, mHeight);
+        writeVarint(out, mStartX);
+        writeVarint(out, mStartY);
+        int cells = mTiles.length;
+        int cell = 0;
+        while (cell < cells) {
+            int run = 1;
+            while (cell + run < cells && mTiles[cell + run] == mTiles[cell]) {
+                run++;
+            }
+            writeVarint(out, run);
+            out.write(mTiles[cell]);
+            cell += run;
+        }
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Parser: reads bytes and varints out of a level's buffer.
+     */
+    private static class Parser {
+        private final byte[] mData;
+        private final int mLength;
+        private int mPosition;
+
+        Parser(byte[] data, int length) {
+            mData = data;
+            mLength = length;
+        }
+
+        int readByte() throws IOException {
+            if (mPosition >= mLength) {
+                throw new IOException("truncated level");
+            }
+            return mData[mPosition++];
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("bad varint in level");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.snake;
+
+/**
+ * Replayer: plays a recorded InputLog again on a fresh ZombieGame, with no
+ * view and no clock, as fast as step() can be called. Since the game only
+ * depends on its seed and its input, the replay ends in the same state as the
+ * original, which makes a slowdown or a desync seen on a device reproducible
+ * on any machine.
+ *
+ */
+public class Replayer {
+
+    private final ZombieGame mGame = new ZombieGame();
+    private Level mLevel;
+
+    /**
+     * Sets the level logs were recorded on.
+     *
+     * @param level the level, or null for a plain arena of the log's size
+     */
+    public void setLevel(Level level) {
+        mLevel = level;
+    }
+
+    /**
+     * Plays a log from the start up to the tick it finished on, or up to the
+     * tick it had reached if it didn't.
+     *
+     * @param log
+     * @param ticks number of ticks to play if the log isn't finished
+     * @return the game as the replay left it
+     * @throws IllegalArgumentException if the log was recorded on another
+     * level than the one set
+     */
+    public ZombieGame replay(InputLog log, long ticks) {
+        long endTick = log.isFinished() ? log.getEndTick() : ticks;
+
+        Level level = mLevel;
+        if (level == null) {
+            level = Level.border(log.getWidth(), log.getHeight());
+        }
+        if (level.hash() != log.getLevelHash()) {
+            throw new IllegalArgumentException("input log was recorded on another level");
+        }
+        mGame.setSeed(log.getSeed());
+        mGame.newGame(level);
+        mGame.setMode(ZombieGame.RUNNING);
+
+        int next = 0;
+        int direction = mGame.getDirection();
+        int changes = log.size();
+        for (long tick = 0; tick < endTick && mGame.getMode() == ZombieGame.RUNNING; tick++) {
+            while (next < changes && log.getTick(next) <= tick) {
+                direction = log.getDirection(next);
+                next++;
+            }
+            mGame.step(direction);
+        }
+        return mGame;
+    }
+
+    /**
+     * Replays a finished log and checks it ends where the original did.
+     *
+     * @param log
+     * @return true if the final state hash matches the one recorded
+     */
+    public boolean verify(InputLog log) {
+        if (!log.isFinished()) {
+            throw new IllegalArgumentException("input log isn't finished");
+        }
+        return replay(log, log.getEndTick()).stateHash() == log.getEndHash();
+    }
+}
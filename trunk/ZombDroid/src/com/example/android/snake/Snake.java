@@ -18,10 +18,17 @@ package com.example.android.snake;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.Window;
 import android.widget.TextView;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
 /**
  * Snake: a simple game that everyone can enjoy.
  * 
@@ -34,9 +41,58 @@ import android.widget.TextView;
 public class Snake extends Activity {
 
     private SnakeView mSnakeView;
+    private SnakeSurfaceView mSurfaceView;
     
     private static String ICICLE_KEY = "snake-view";
 
+    private static final String TAG = "Snake";
+
+    /**
+     * Run the game on a SnakeSurfaceView's own thread instead of the UI thread.
+     */
+    private static final boolean USE_SURFACE_LOOP = false;
+
+    /**
+     * Play the level in res/raw instead of a plain arena the size of the
+     * screen.
+     */
+    private static final boolean USE_LEVEL = false;
+
+    /**
+     * Time every tick and frame, show the timings over the game and write
+     * them to TIMINGS_FILE in the app's files directory whenever the game is
+     * paused.
+     */
+    private static final boolean SHOW_TIMINGS = false;
+    private static final String TIMINGS_FILE = "timings.txt";
+
+    /**
+     * Only draw the zombies the player can see.
+     */
+    private static final boolean FOG_OF_WAR = false;
+
+    /**
+     * Make key presses bring the next tick forward.
+     */
+    private static final boolean TICK_ON_INPUT = false;
+
+    /**
+     * Compose frames from a tile atlas and draw them in one go, rather than
+     * drawing each tile on its own.
+     */
+    private static final boolean SOFTWARE_RENDERING = false;
+
+    /**
+     * Seed every game and record its input, and write the last finished game
+     * to INPUT_LOG_FILE in the app's files directory whenever the game is
+     * paused, for ReplaySession to play again.
+     */
+    private static final boolean RECORD_INPUT = false;
+    private static final String INPUT_LOG_FILE = "input.log";
+
+    private GameTimings mTimings;
+    private InputLog mInputLog;
+
     /**
      * Called when Activity is first created. Turns off the title bar, sets up
      * the content views, and fires up the SnakeView.
@@ -49,10 +105,38 @@ public class Snake extends Activity {
         // No Title bar
         requestWindowFeature(Window.FEATURE_NO_TITLE);
 
-        setContentView(R.layout.snake_layout);
+        if (USE_SURFACE_LOOP) {
+            setContentView(R.layout.snake_surface_layout);
+        } else {
+            setContentView(R.layout.snake_layout);
+        }
 
         mSnakeView = (SnakeView) findViewById(R.id.snake);
         mSnakeView.setTextView((TextView) findViewById(R.id.text));
+        if (USE_SURFACE_LOOP) {
+            mSurfaceView = (SnakeSurfaceView) findViewById(R.id.surface);
+            mSnakeView.setSurface(mSurfaceView);
+        }
+        if (USE_LEVEL) {
+            mSnakeView.setLevel(loadLevel(R.raw.level1));
+        }
+        if (SHOW_TIMINGS) {
+            mTimings = new GameTimings();
+            mSnakeView.setTimings(mTimings);
+        }
+        if (FOG_OF_WAR) {
+            mSnakeView.setFogOfWar(true);
+        }
+        if (TICK_ON_INPUT) {
+            mSnakeView.setTickOnInput(true);
+        }
+        if (SOFTWARE_RENDERING) {
+            mSnakeView.setSoftwareRendering(true);
+        }
+        if (RECORD_INPUT) {
+            mInputLog = new InputLog();
+            mSnakeView.setInputLog(mInputLog);
+        }
 
         if (savedInstanceState == null) {
             // We were just launched -- set up a new game
@@ -68,6 +152,28 @@ public class Snake extends Activity {
         }
     }
 
+    /**
+     * Reads a level from a raw resource.
+     * 
+     * @param id
+     * @return the level, or null if it can't be read
+     */
+    private Level loadLevel(int id) {
+        InputStream in = getResources().openRawResource(id);
+        try {
+            return Level.read(in);
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't read level", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing more to do with it
+            }
+        }
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) 
     {
@@ -79,6 +185,57 @@ public class Snake extends Activity {
         super.onPause();
         // Pause the game along with the activity
         mSnakeView.setMode(SnakeView.PAUSE);
+        if (mSurfaceView != null) {
+            mSurfaceView.onPause();
+        }
+        if (mTimings != null) {
+            writeTimings();
+        }
+        if (mInputLog != null && mInputLog.isFinished()) {
+            writeInputLog();
+        }
+    }
+
+    /**
+     * Writes the timings recorded so far to TIMINGS_FILE, replacing whatever
+     * was there.
+     */
+    private void writeTimings() {
+        try {
+            Writer out = new OutputStreamWriter(openFileOutput(TIMINGS_FILE, MODE_PRIVATE));
+            try {
+                mTimings.writeTo(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write timings", e);
+        }
+    }
+
+    /**
+     * Writes the last finished game to INPUT_LOG_FILE, replacing whatever was
+     * there.
+     */
+    private void writeInputLog() {
+        try {
+            OutputStream out = openFileOutput(INPUT_LOG_FILE, MODE_PRIVATE);
+            try {
+                mInputLog.writeTo(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write input log", e);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mSurfaceView != null) {
+            mSurfaceView.onResume();
+        }
     }
 
     @Override
@@ -0,0 +1,205 @@
+package com.example.android.snake;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * SnakeSurfaceView: an alternative host for a SnakeView that runs the game on
+ * a dedicated thread instead of the UI thread's Handler.
+ *
+ * The loop thread advances the game in fixed steps of the SnakeView's move
+ * delay. If it falls behind it runs up to MAX_CATCH_UP_TICKS steps back to
+ * back without drawing in between, and if it is still behind after that it
+ * gives up on the backlog rather than spiralling. When the SnakeView ticks on
+ * input, a key press wakes the thread and the next step comes as soon as half
+ * the move delay has passed since the last one. The SnakeView stays in the
+ * layout to take key events and show status text, but draws nothing itself.
+ *
+ */
+public class SnakeSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    /**
+     * Most simulation steps run in a row before a frame is drawn.
+     */
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    private SnakeView mSnakeView;
+
+    /**
+     * mHasSurface: the surface exists and can be drawn on.
+     * mResumed: the activity is in the foreground.
+     * The loop thread runs only while both are true.
+     */
+    private boolean mHasSurface;
+    private boolean mResumed = true;
+    private GameThread mThread;
+
+    public SnakeSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        getHolder().addCallback(this);
+    }
+
+    public SnakeSurfaceView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        getHolder().addCallback(this);
+    }
+
+    /**
+     * Sets the game this surface runs and draws. Called by
+     * SnakeView.setSurface().
+     *
+     * @param snakeView
+     */
+    void setSnakeView(SnakeView snakeView) {
+        mSnakeView = snakeView;
+    }
+
+    /**
+     * Stops the loop thread. Called from the activity's onPause().
+     */
+    public void onPause() {
+        mResumed = false;
+        stopThread();
+    }
+
+    /**
+     * Restarts the loop thread if the surface is ready. Called from the
+     * activity's onResume().
+     */
+    public void onResume() {
+        mResumed = true;
+        startThread();
+    }
+
+    public void surfaceCreated(SurfaceHolder holder) {
+        mHasSurface = true;
+        startThread();
+    }
+
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+    }
+
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        mHasSurface = false;
+        stopThread();
+    }
+
+    private void startThread() {
+        if (mThread == null && mHasSurface && mResumed && mSnakeView != null) {
+            mThread = new GameThread();
+            mThread.start();
+        }
+    }
+
+    /**
+     * Wakes the loop thread so it can look at new input before its next tick
+     * is due. Called on the UI thread.
+     */
+    void wake() {
+        GameThread thread = mThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void stopThread() {
+        if (mThread == null) {
+            return;
+        }
+        mThread.mRunning = false;
+        mThread.interrupt();
+        boolean joined = false;
+        while (!joined) {
+            try {
+                mThread.join();
+                joined = true;
+            } catch (InterruptedException e) {
+                // keep waiting, the thread must be gone before the surface is
+            }
+        }
+        mThread = null;
+    }
+
+    /**
+     * GameThread: steps the game on a fixed timestep and draws it onto the
+     * surface.
+     */
+    private class GameThread extends Thread {
+
+        volatile boolean mRunning = true;
+
+        @Override
+        public void run() {
+            long nextTick = SystemClock.uptimeMillis();
+            long lastTick = nextTick;
+            boolean drawn = false;
+
+            while (mRunning) {
+                long now = SystemClock.uptimeMillis();
+                long moveDelay = mSnakeView.getMoveDelay();
+                boolean early = mSnakeView.isTickOnInput() && mSnakeView.hasPendingInput();
+                if (early && now >= lastTick + moveDelay / 2 && now < nextTick) {
+                    nextTick = now;
+                }
+
+                int ticks = 0;
+                synchronized (mSnakeView) {
+                    while (now >= nextTick && ticks < MAX_CATCH_UP_TICKS) {
+                        mSnakeView.step();
+                        nextTick += moveDelay;
+                        ticks++;
+                    }
+                }
+                if (ticks > 0) {
+                    lastTick = now;
+                }
+                if (now >= nextTick) {
+                    // Still behind after catching up: drop the backlog and skip
+                    // this frame so the next one starts on time
+                    GameTimings timings = mSnakeView.getTimings();
+                    if (timings != null) {
+                        timings.addMissedFrames((int) ((now - nextTick) / moveDelay) + 1);
+                    }
+                    nextTick = now + moveDelay;
+                } else if (ticks > 0 || !drawn) {
+                    drawn = drawFrame();
+                }
+
+                long wait = nextTick - SystemClock.uptimeMillis();
+                if (mSnakeView.isTickOnInput() && mSnakeView.hasPendingInput()) {
+                    wait = Math.min(wait, lastTick + moveDelay / 2 - SystemClock.uptimeMillis());
+                }
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait);
+                    } catch (InterruptedException e) {
+                        // woken up to stop, which mRunning says, or for input
+                    }
+                }
+            }
+        }
+
+        private boolean drawFrame() {
+            SurfaceHolder holder = getHolder();
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null) {
+                return false;
+            }
+            try {
+                canvas.drawColor(Color.BLACK);
+                synchronized (mSnakeView) {
+                    mSnakeView.drawTiles(canvas);
+                    mSnakeView.discardDirtyTiles();
+                }
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+            return true;
+        }
+    }
+}
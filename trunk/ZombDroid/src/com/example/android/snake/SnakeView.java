@@ -16,22 +16,21 @@
 
 package com.example.android.snake;
 
-import java.util.ArrayList;
-import java.util.Random;
-
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
 import android.util.AttributeSet;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.widget.TextView;
 
 /**
- * SnakeView: implementation of a simple game of Snake
+ * SnakeView: draws a ZombieGame and feeds it the player's input. The rules
+ * themselves live in ZombieGame.
  * 
  * 
  */
@@ -40,26 +39,29 @@ public class SnakeView extends TileView {
     private static final String TAG = "SnakeView";
 
     /**
-     * Current mode of application: READY to run, RUNNING, or you have already
-     * lost. static final ints are used instead of an enum for performance
-     * reasons.
+     * Modes of the game, see ZombieGame.
+     */
+    public static final int PAUSE = ZombieGame.PAUSE;
+    public static final int READY = ZombieGame.READY;
+    public static final int RUNNING = ZombieGame.RUNNING;
+    public static final int LOSE = ZombieGame.LOSE;
+    public static final int WIN = ZombieGame.WIN;
+
+    /**
+     * Direction the player will head on the next move.
      */
-    private int mMode = READY;
-    public static final int PAUSE = 0;
-    public static final int READY = 1;
-    public static final int RUNNING = 2;
-    public static final int LOSE = 3;
-    public static final int WIN = 4;
+    private int mNextDirection = ZombieGame.NORTH;
 
     /**
-     * Current direction the snake is headed.
+     * mInput: key presses not yet taken by a tick, put in by the UI thread
+     * without locking and taken by whichever thread ticks, one direction
+     * change per tick.
+     * mTickOnInput: whether a press makes the next tick come early, as soon
+     * as half the move delay has passed since the last one.
      */
-    private int mDirection = NORTH;
-    private int mNextDirection = NORTH;
-    private static final int NORTH = 1;
-    private static final int SOUTH = 2;
-    private static final int EAST = 3;
-    private static final int WEST = 4;
+    private static final int INPUT_CAPACITY = 16;
+    private final InputQueue mInput = new InputQueue(INPUT_CAPACITY);
+    private volatile boolean mTickOnInput;
 
     /**
      * Labels for the drawables that will be loaded into the TileView class
@@ -68,16 +70,9 @@ public class SnakeView extends TileView {
     private static final int YELLOW_STAR = 2;
     private static final int GREEN_STAR = 3;
 
-    /**
-     * mScore: used to track the number of apples captured mMoveDelay: number of
-     * milliseconds between snake movements. This will decrease as apples are
-     * captured.
-     */
-    private long mScore = 0;
-    private long mMoveDelay = 600;
     /**
      * mLastMove: tracks the absolute time when the snake last moved, and is used
-     * to determine if a move should be made based on mMoveDelay.
+     * to determine if a move should be made based on the game's move delay.
      */
     private long mLastMove;
     
@@ -87,16 +82,26 @@ public class SnakeView extends TileView {
     private TextView mStatusText;
 
     /**
-     * mSnakeTrail: a list of Coordinates that make up the snake's body
-     * mAppleList: the secret location of the juicy apples the snake craves.
+     * mGame: the game being played and drawn
      */
-    private ArrayList<Coordinate> mPlayerTrail = new ArrayList<Coordinate>();
-    private ArrayList<Coordinate> mZombieList = new ArrayList<Coordinate>();
+    private ZombieGame mGame = new ZombieGame();
 
     /**
-     * Everyone needs a little randomness in their life
+     * mSnapshot: packs the game into saved state and back
      */
-    private static final Random RNG = new Random();
+    private final GameSnapshot mSnapshot = new GameSnapshot();
+
+    /**
+     * mInputLog: when set, every new game is seeded and its input recorded
+     * here, so it can be played again with a Replayer
+     */
+    private InputLog mInputLog;
+
+    /**
+     * mLevel: the level to play, or null for a plain arena the size of the
+     * view
+     */
+    private Level mLevel;
 
     /**
      * Create a simple handler that we can use to cause animation to happen.  We
@@ -105,12 +110,41 @@ public class SnakeView extends TileView {
      */
     private RefreshHandler mRedrawHandler = new RefreshHandler();
 
+    /**
+     * mSurface: when set, the game is stepped and drawn by the surface's own
+     * loop thread instead of mRedrawHandler, and this view only handles input
+     * and status text. Everything the two threads share is guarded by this
+     * view's monitor.
+     * mUiThread: the thread this view was created on.
+     */
+    private SnakeSurfaceView mSurface;
+    private final Thread mUiThread = Thread.currentThread();
+
+    /**
+     * Status texts, looked up once so that changing mode doesn't go back to
+     * the resources. mLoseText is reused to build the score line.
+     */
+    private CharSequence mPauseText;
+    private CharSequence mReadyText;
+    private String mLosePrefix;
+    private String mLoseSuffix;
+    private CharSequence mWinText;
+    private final StringBuilder mLoseText = new StringBuilder();
+
+    /**
+     * mTrackAllocations: whether update() measures what each tick allocates.
+     * mLastTickAllocations/mMaxTickAllocations: bytes allocated by the last
+     * tick and by the worst tick since tracking was turned on.
+     */
+    private boolean mTrackAllocations;
+    private int mLastTickAllocations;
+    private int mMaxTickAllocations;
+
     class RefreshHandler extends Handler {
 
         @Override
         public void handleMessage(Message msg) {
             SnakeView.this.update();
-            SnakeView.this.invalidate();
         }
 
         public void sleep(long delayMillis) {
@@ -145,27 +179,12 @@ public class SnakeView extends TileView {
         loadTile(RED_STAR, r.getDrawable(R.drawable.redstar));
         loadTile(YELLOW_STAR, r.getDrawable(R.drawable.yellowstar));
         loadTile(GREEN_STAR, r.getDrawable(R.drawable.greenstar));
-    	
-    }
-    
 
-    /**
-     * Given a ArrayList of coordinates, we need to flatten them into an array of
-     * ints before we can stuff them into a map for flattening and storage.
-     * 
-     * @param cvec : a ArrayList of Coordinate objects
-     * @return : a simple array containing the x/y values of the coordinates
-     * as [x1,y1,x2,y2,x3,y3...]
-     */
-    private int[] coordArrayListToArray(ArrayList<Coordinate> cvec) {
-        int count = cvec.size();
-        int[] rawArray = new int[count * 2];
-        for (int index = 0; index < count; index++) {
-            Coordinate c = cvec.get(index);
-            rawArray[2 * index] = c.x;
-            rawArray[2 * index + 1] = c.y;
-        }
-        return rawArray;
+        mPauseText = r.getText(R.string.mode_pause);
+        mReadyText = r.getText(R.string.mode_ready);
+        mLosePrefix = r.getString(R.string.mode_lose_prefix);
+        mLoseSuffix = r.getString(R.string.mode_lose_suffix);
+        mWinText = r.getString(R.string.mode_win_prefix);
     }
 
     /**
@@ -175,57 +194,50 @@ public class SnakeView extends TileView {
      * 
      * @return a Bundle with this view's state
      */
-    public Bundle saveState() {
+    public synchronized Bundle saveState() {
         Bundle map = new Bundle();
 
-        map.putIntArray("mAppleList", coordArrayListToArray(mZombieList));
-        map.putInt("mDirection", Integer.valueOf(mDirection));
+        map.putByteArray("mGame", mSnapshot.save(mGame));
         map.putInt("mNextDirection", Integer.valueOf(mNextDirection));
-        map.putLong("mMoveDelay", Long.valueOf(mMoveDelay));
-        map.putLong("mScore", Long.valueOf(mScore));
-        map.putIntArray("mSnakeTrail", coordArrayListToArray(mPlayerTrail));
 
         return map;
     }
 
-    /**
-     * Given a flattened array of ordinate pairs, we reconstitute them into a
-     * ArrayList of Coordinate objects
-     * 
-     * @param rawArray : [x1,y1,x2,y2,...]
-     * @return a ArrayList of Coordinates
-     */
-    private ArrayList<Coordinate> coordArrayToArrayList(int[] rawArray) {
-        ArrayList<Coordinate> coordArrayList = new ArrayList<Coordinate>();
-
-        int coordCount = rawArray.length;
-        for (int index = 0; index < coordCount; index += 2) {
-            Coordinate c = new Coordinate(rawArray[index], rawArray[index + 1]);
-            coordArrayList.add(c);
-        }
-        return coordArrayList;
-    }
-
     /**
      * Restore game state if our process is being relaunched
      * 
      * @param icicle a Bundle containing the game state
      */
-    public void restoreState(Bundle icicle) {
+    public synchronized void restoreState(Bundle icicle) {
         setMode(PAUSE);
 
-        mZombieList = coordArrayToArrayList(icicle.getIntArray("mAppleList"));
-        mDirection = icicle.getInt("mDirection");
+        mSnapshot.restore(mGame, icicle.getByteArray("mGame"));
+        if (mInputLog != null) {
+            mInputLog.abandon();
+        }
+        mGame.setMode(PAUSE);
         mNextDirection = icicle.getInt("mNextDirection");
-        mMoveDelay = icicle.getLong("mMoveDelay");
-        mScore = icicle.getLong("mScore");
-        mPlayerTrail = coordArrayToArrayList(icicle.getIntArray("mSnakeTrail"));
+        mInput.clear();
+        mGame.setLevel(currentLevel());
+    }
+
+    @Override
+    protected synchronized void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        Level level = currentLevel();
+        if (mInputLog != null && mInputLog.isRecording()
+                && level.hash() != mInputLog.getLevelHash()) {
+            mInputLog.abandon();
+        }
+        mGame.setLevel(level);
+        redrawView();
     }
 
     /*
      * handles key events in the game. Update the direction our snake is traveling
      * based on the DPAD. Ignore events that would cause the snake to immediately
-     * turn back on itself.
+     * turn back on itself. Direction keys are queued without taking this view's
+     * lock, so a press never waits for a tick being worked out.
      * 
      * (non-Javadoc)
      * 
@@ -233,59 +245,94 @@ public class SnakeView extends TileView {
      */
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent msg) {
-
         if (keyCode == KeyEvent.KEYCODE_DPAD_UP) {
-            if (mMode == READY | mMode == LOSE | mMode == WIN) {
-                /*
-                 * At the beginning of the game, or the end of a previous one,
-                 * we should start a new game.
-                 */
-                initNewGame();
-                setMode(RUNNING);
-                update();
-                return (true);
-            }
+            synchronized (this) {
+                int mode = mGame.getMode();
+                if (mode == READY | mode == LOSE | mode == WIN) {
+                    /*
+                     * At the beginning of the game, or the end of a previous one,
+                     * we should start a new game.
+                     */
+                    initNewGame();
+                    setMode(RUNNING);
+                    update();
+                    return (true);
+                }
 
-            if (mMode == PAUSE) {
-                /*
-                 * If the game is merely paused, we should just continue where
-                 * we left off.
-                 */
-                setMode(RUNNING);
-                update();
-                return (true);
+                if (mode == PAUSE) {
+                    /*
+                     * If the game is merely paused, we should just continue where
+                     * we left off.
+                     */
+                    setMode(RUNNING);
+                    update();
+                    return (true);
+                }
             }
 
-            
-                mNextDirection = NORTH;
-            
+            queueInput(ZombieGame.NORTH);
             return (true);
         }
 
         if (keyCode == KeyEvent.KEYCODE_DPAD_DOWN) {
-            
-                mNextDirection = SOUTH;
-            
+            queueInput(ZombieGame.SOUTH);
             return (true);
         }
 
         if (keyCode == KeyEvent.KEYCODE_DPAD_LEFT) {
-            
-                mNextDirection = WEST;
-            
+            queueInput(ZombieGame.WEST);
             return (true);
         }
 
         if (keyCode == KeyEvent.KEYCODE_DPAD_RIGHT) {
-            
-                mNextDirection = EAST;
-            
+            queueInput(ZombieGame.EAST);
             return (true);
         }
 
         return super.onKeyDown(keyCode, msg);
     }
 
+    /**
+     * Queues a direction for the coming ticks and, if ticking on input, asks
+     * for the next tick early. Called on the UI thread only.
+     * 
+     * @param direction
+     */
+    private void queueInput(int direction) {
+        mInput.offer(direction, System.nanoTime());
+        if (mTickOnInput && mGame.getMode() == RUNNING) {
+            SnakeSurfaceView surface = mSurface;
+            if (surface != null) {
+                surface.wake();
+            } else {
+                update();
+            }
+        }
+    }
+
+    /**
+     * Makes key presses bring the next tick forward, to as soon as half the
+     * move delay has passed since the last one, rather than waiting out the
+     * whole delay. Off by default, since pressing keys then speeds the game
+     * up.
+     * 
+     * @param tickOnInput
+     */
+    public void setTickOnInput(boolean tickOnInput) {
+        mTickOnInput = tickOnInput;
+    }
+
+    public boolean isTickOnInput() {
+        return mTickOnInput;
+    }
+
+    /**
+     * @return whether a tick ran now would have a key press to take
+     */
+    boolean hasPendingInput() {
+        return !mInput.isEmpty();
+    }
+
     /**
      * Sets the TextView that will be used to give information (such as "Game
      * Over" to the user.
@@ -296,64 +343,67 @@ public class SnakeView extends TileView {
         mStatusText = newView;
     }
 
-    private Human Player;
-    public Human getPlayer() {
-		return Player;
+    public ZombieGame getGame() {
+        return mGame;
+    }
+
+    /**
+     * Turns the fog of war on or off: with it on, only the zombies the player
+     * can see are drawn.
+     * 
+     * @param fogOfWar
+     */
+    public void setFogOfWar(boolean fogOfWar) {
+        setFog(fogOfWar ? mGame.getFieldOfView() : null);
+    }
+
+	/**
+	 * Records every game from now on into a log, seeding each one so that
+	 * a Replayer can play it again exactly. The log holds the latest game
+	 * only.
+	 * 
+	 * @param log the log to record into, or null to stop recording
+	 */
+	public synchronized void setInputLog(InputLog log) {
+	    mInputLog = log;
+	}
+
+	public InputLog getInputLog() {
+	    return mInputLog;
+	}
+
+	/**
+	 * Sets the level played from the next new game on. Levels bigger than
+	 * the view scroll to follow the player.
+	 * 
+	 * @param level the level, or null for a plain arena the size of the view
+	 */
+	public synchronized void setLevel(Level level) {
+	    mLevel = level;
 	}
 
-	public void setPlayer(Human player) {
-		Player = player;
+	/**
+	 * @return the level to play, which is a plain walled arena the size of
+	 * the view unless setLevel() picked one
+	 */
+	private Level currentLevel() {
+	    if (mLevel != null) {
+	        return mLevel;
+	    }
+	    return Level.border(mXTileCount, mYTileCount);
 	}
 
 	private void initNewGame() {
-	    mPlayerTrail.clear();
-	    mZombieList.clear();
-	    Player = new Human();
-	    Weapon Pistol = new Weapon();
-	    Pistol.setPower(80);
-	    Pistol.setRange(8);
-	    Pistol.setAmmo(8);
-	    Pistol.setAmmoInClip(2);
-	    Pistol.setClipSize(5);
-	    Pistol.setTurnsUntilNextShot(0);
-	    Pistol.setFireRatePerTurn(10);
-	    Pistol.setAccuracy(80);
-	    Player.setSelectedWeapon(Pistol);
-	    
-	    
-	    mPlayerTrail.add(new Coordinate(12, mYTileCount - 1));
-	    
-	    
-	    mNextDirection = NORTH;
-	    
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-	    addRandomZombie();
-
-	    
-	    mMoveDelay = 300;
-	    mScore = 0;
+	    Level level = currentLevel();
+	    if (mInputLog != null) {
+	        long seed = System.currentTimeMillis();
+	        mGame.setSeed(seed);
+	        mInputLog.start(seed, level);
+	    }
+	    mGame.newGame(level);
+	    mNextDirection = ZombieGame.NORTH;
+	    mInput.clear();
+	    redrawView();
 	}
 
 	/**
@@ -362,304 +412,320 @@ public class SnakeView extends TileView {
      * 
      * @param newMode
      */
-    public void setMode(int newMode) {
-        int oldMode = mMode;
-        mMode = newMode;
+    public synchronized void setMode(int newMode) {
+        int oldMode = mGame.getMode();
+        mGame.setMode(newMode);
+        showMode(oldMode, newMode);
+    }
 
+    /**
+     * Shows the status text for a mode change, and starts the update loop when
+     * the game starts running.
+     * 
+     * @param oldMode
+     * @param newMode
+     */
+    private void showMode(int oldMode, int newMode) {
         if (newMode == RUNNING & oldMode != RUNNING) {
-            mStatusText.setVisibility(View.INVISIBLE);
+            showStatus(null, View.INVISIBLE);
+            // Time spent paused isn't a missed frame
+            mLastMove = 0;
             update();
             return;
         }
 
-        Resources res = getContext().getResources();
         CharSequence str = "";
         if (newMode == PAUSE) {
-            str = res.getText(R.string.mode_pause);
+            str = mPauseText;
         }
         if (newMode == READY) {
-            str = res.getText(R.string.mode_ready);
+            str = mReadyText;
         }
         if (newMode == LOSE) {
-        	//mAppleList.clear();
-            str = res.getString(R.string.mode_lose_prefix) + mScore
-                  + res.getString(R.string.mode_lose_suffix);
-            
+            mLoseText.setLength(0);
+            mLoseText.append(mLosePrefix).append(mGame.getScore()).append(mLoseSuffix);
+            str = mLoseText;
         }
         if (newMode == WIN) {
-        	mZombieList.clear();
-            str = res.getString(R.string.mode_win_prefix);
+            str = mWinText;
         }
 
-        mStatusText.setText(str);
-        mStatusText.setVisibility(View.VISIBLE);
+        showStatus(str, View.VISIBLE);
     }
 
     /**
-     * Selects a random location within the garden that is not currently covered
-     * by the snake. Currently _could_ go into an infinite loop if the snake
-     * currently fills the garden, but we'll leave discovery of this prize to a
-     * truly excellent snake-player.
+     * Updates the status TextView. Mode changes made by a surface loop thread
+     * are handed over to the UI thread.
      * 
+     * @param str new text, or null to leave the text alone
+     * @param visibility
      */
-    private void addRandomZombie() {
-        Coordinate newCoord = null;
-        boolean found = false;
-        while (!found) {
-            // Choose a new location for our apple
-            int newX = 1 + RNG.nextInt(mXTileCount - 2);
-            int newY = 1 + RNG.nextInt(mYTileCount - 7);
-            newCoord = new Coordinate(newX, newY);
-
-            // Make sure it's not already under the snake
-            boolean collision = false;
-            int snakelength = mPlayerTrail.size();
-            for (int index = 0; index < snakelength; index++) {
-                if (mPlayerTrail.get(index).equals(newCoord)) {
-                    collision = true;
+    private void showStatus(final CharSequence str, final int visibility) {
+        if (Thread.currentThread() != mUiThread) {
+            post(new Runnable() {
+                public void run() {
+                    showStatus(str, visibility);
                 }
-            }
-            // if we're here and there's been no collision, then we have
-            // a good location for an apple. Otherwise, we'll circle back
-            // and try again
-            found = !collision;
+            });
+            return;
         }
-        if (newCoord == null) {
-            Log.e(TAG, "Somehow ended up with a null newCoord!");
+        if (str != null) {
+            mStatusText.setText(str);
         }
-        mZombieList.add(newCoord);
+        mStatusText.setVisibility(visibility);
     }
 
-
     /**
-     * Handles the basic update loop, checking to see if we are in the running
-     * state, determining if a move should be made, updating the snake's location.
+     * Hands the game loop and drawing over to a SnakeSurfaceView running its
+     * own thread.
+     * 
+     * @param surface the surface to run on, or null to go back to the UI thread
      */
-    public void update() {
-        if (mMode == RUNNING) {
-            long now = System.currentTimeMillis();
-
-            if (now - mLastMove > mMoveDelay) {
-                clearTiles();
-                updateWalls();
-                updateZombies();
-                updatePlayer();
-                
-                mLastMove = now;
-            }
-            mRedrawHandler.sleep(mMoveDelay);
+    public synchronized void setSurface(SnakeSurfaceView surface) {
+        mSurface = surface;
+        if (surface != null) {
+            surface.setSnakeView(this);
         }
+        invalidate();
+    }
+
+    public long getMoveDelay() {
+        return mGame.getMoveDelay();
+    }
 
+    @Override
+    public void onDraw(Canvas canvas) {
+        if (mSurface == null) {
+            super.onDraw(canvas);
+        }
     }
 
+
     /**
-     * Draws some walls.
+     * Records how long ticks, their phases and draws take into timings, and
+     * shows a summary over the game.
      * 
+     * @param timings where to record, or null to stop timing
      */
-    private void updateWalls() {
-        for (int x = 0; x < mXTileCount; x++) {
-            setTile(GREEN_STAR, x, 0);
-            setTile(GREEN_STAR, x, mYTileCount - 1);
-        }
-        for (int y = 1; y < mYTileCount - 1; y++) {
-            setTile(GREEN_STAR, 0, y);
-            setTile(GREEN_STAR, mXTileCount - 1, y);
-        }
+    @Override
+    public synchronized void setTimings(GameTimings timings) {
+        super.setTimings(timings);
+        mGame.setTimings(timings);
     }
 
     /**
-     * Draws some apples.
+     * Turns on or off counting of the bytes each tick in update() allocates,
+     * see getLastTickAllocations(). Counting slows the VM down, so it is meant
+     * for debugging and tests only.
      * 
+     * @param track
      */
-    private void updateZombies() {
-        for (Coordinate zombieCoordinate : mZombieList) 
-        {
-        	Coordinate head = mPlayerTrail.get(0);
-        	double xDistance = zombieCoordinate.x - head.x;
-        	double yDistance = zombieCoordinate.y - head.y;
-        	if((-4 < xDistance && xDistance < 4) && (-4 < yDistance && yDistance < 4))
-        	{
-        	boolean IsLeft = false;
-        	if(xDistance < 0)
-        	{
-        		IsLeft = true;
-        		xDistance = 0 - xDistance;
-        	}
-        	boolean IsAbove = false;
-        	if(yDistance < 0)
-        	{
-        		IsAbove = true;
-        		yDistance = 0 - yDistance;
-        	}
-        	if(xDistance > yDistance)
-        	{
-            	if(!IsLeft)
-            	{
-            		zombieCoordinate.x = zombieCoordinate.x - 1;
-            	}
-            	else
-            	{
-            		zombieCoordinate.x = zombieCoordinate.x + 1;
-            	}
-        	}
-        	else
-        	{
-            	if(!IsAbove)
-            	{
-            		zombieCoordinate.y = zombieCoordinate.y - 1;
-            	}
-            	else
-            	{
-            		zombieCoordinate.y = zombieCoordinate.y + 1;
-            	}
-        	}
-        	}
-        	//move in direction the player is further from
-            setTile(RED_STAR, zombieCoordinate.x, zombieCoordinate.y);
+    public void setTrackAllocations(boolean track) {
+        if (track == mTrackAllocations) {
+            return;
+        }
+        mTrackAllocations = track;
+        mLastTickAllocations = 0;
+        mMaxTickAllocations = 0;
+        if (track) {
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
         }
     }
 
     /**
-     * Figure out which way the snake is going, see if he's run into anything (the
-     * walls, himself, or an apple). If he's not going to die, we then add to the
-     * front and subtract from the rear in order to simulate motion. If we want to
-     * grow him, we don't subtract from the rear.
-     * 
+     * @return bytes allocated by the last tick run from update(), or 0 if
+     * allocations aren't being tracked
      */
-    private void updatePlayer() {
+    public int getLastTickAllocations() {
+        return mLastTickAllocations;
+    }
 
-        // grab the Player
-        Coordinate head = mPlayerTrail.get(0);
-        Coordinate newHead = new Coordinate(1, 1);
-        
+    /**
+     * @return most bytes allocated by any one tick since tracking was turned on
+     */
+    public int getMaxTickAllocations() {
+        return mMaxTickAllocations;
+    }
 
-        mDirection = mNextDirection;
+    /**
+     * Handles the basic update loop, checking to see if we are in the running
+     * state, determining if a move should be made, updating the snake's location.
+     */
+    public void update() {
+        if (mGame.getMode() == RUNNING && mSurface == null) {
+            long now = System.currentTimeMillis();
 
-        switch (mDirection) {
-        case EAST: {
-            newHead = new Coordinate(head.x + 1, head.y);
-            break;
-        }
-        case WEST: {
-            newHead = new Coordinate(head.x - 1, head.y);
-            break;
-        }
-        case NORTH: {
-            newHead = new Coordinate(head.x, head.y - 1);
-            break;
-        }
-        case SOUTH: {
-            newHead = new Coordinate(head.x, head.y + 1);
-            break;
-        }
+            long moveDelay = mGame.getMoveDelay();
+            boolean early = mTickOnInput && !mInput.isEmpty();
+            if (now - mLastMove > moveDelay
+                    || (early && now - mLastMove >= moveDelay / 2)) {
+                GameTimings timings = getTimings();
+                if (timings != null && mLastMove != 0
+                        && now - mLastMove > 2 * mGame.getMoveDelay()) {
+                    timings.addMissedFrames((int) ((now - mLastMove) / mGame.getMoveDelay()) - 1);
+                }
+                if (mTrackAllocations) {
+                    int before = Debug.getThreadAllocSize();
+                    step();
+                    mLastTickAllocations = Debug.getThreadAllocSize() - before;
+                    if (mLastTickAllocations > mMaxTickAllocations) {
+                        mMaxTickAllocations = mLastTickAllocations;
+                    }
+                } else {
+                    step();
+                }
+                
+                mLastMove = now;
+            }
+            invalidateTiles();
+            if (mTickOnInput && !mInput.isEmpty()) {
+                // Come back for the presses still queued as soon as they may
+                // tick
+                mRedrawHandler.sleep(Math.max(0, mLastMove + moveDelay / 2 - now));
+            } else {
+                mRedrawHandler.sleep(moveDelay);
+            }
         }
 
-        //if the Player reaches the top of the screen
-        if(newHead.y < 1)
-        {
-        	setMode(WIN);
-        }
+    }
 
-        // Collision detection
-        // For now we have a 1-square wall around the entire arena
-        if (((head.x < 2)&& mDirection == WEST) ||
-    		((head.y < 2)&& mDirection == NORTH)  ||
-    		((head.x > mXTileCount - 3)&& mDirection == EAST) ||
-    		((head.y > mYTileCount - 3)&& mDirection == SOUTH) ) 
-        {  
-        	//player is at the edge of the screen trying to move into the fence so dont move them
-        }
-        else
-        {
-            //Move player
-            mPlayerTrail.add(0, newHead);
-            mPlayerTrail.remove(mPlayerTrail.size() - 1);
+    /**
+     * Advances a running game by exactly one move, whatever the time, and
+     * redraws the tiles it changed. The caller owns the clock.
+     */
+    public synchronized void step() {
+        takeInput();
+        int oldMode = mGame.getMode();
+        if (mInputLog != null && oldMode == RUNNING) {
+            mInputLog.record(mGame.getTick(), mNextDirection);
+        }
+        mGame.step(mNextDirection);
+
+        int player = mGame.getPlayerIndex();
+        if (player != EntityStore.NONE && getCamera().follow(
+                mGame.getSurvivors().getX(player), mGame.getSurvivors().getY(player))) {
+            // Scrolled: every tile of the window is new
+            updateWalls();
+            rebuildStaticLayer();
+            redrawAllTiles();
+        } else {
+            int width = mGame.getWidth();
+            int changed = mGame.getChangedCount();
+            for (int index = 0; index < changed; index++) {
+                int tile = mGame.getChangedTile(index);
+                refreshTile(tile % width, tile / width);
+            }
         }
-        
-        int index = 0;
-        for (Coordinate c : mPlayerTrail) {
-            if (index == 0) {
-                setTile(YELLOW_STAR, c.x, c.y);
-            } else {
-                setTile(RED_STAR, c.x, c.y);
+
+        if (mGame.getMode() != oldMode) {
+            if (mInputLog != null) {
+                mInputLog.finish(mGame.getTick(), mGame.stateHash());
             }
-            index++;
+            showMode(oldMode, mGame.getMode());
         }
+    }
 
-        // Check For collisions with zombies
-        int zombiecount = mZombieList.size();
-        for (int Zombieindex = 0; Zombieindex < zombiecount; Zombieindex++) {
-            Coordinate c = mZombieList.get(Zombieindex);
-            if (c.equals(newHead)) {
-                setMode(LOSE);
+    /**
+     * Takes queued key presses, oldest first, up to the first that changes
+     * direction, and records how long each waited. Presses of the direction
+     * already taken change nothing, so they don't hold a turn back a tick.
+     */
+    private void takeInput() {
+        GameTimings timings = getTimings();
+        int direction;
+        while ((direction = mInput.take()) != InputQueue.EMPTY) {
+            if (timings != null) {
+                timings.record(GameTimings.INPUT, System.nanoTime() - mInput.getTakenTime());
+            }
+            if (direction != mNextDirection) {
+                mNextDirection = direction;
+                return;
             }
         }
-        
-        fireWeapon(head, zombiecount);
+    }
 
+    /**
+     * Centres the camera on the player, or on the level's start if there is no
+     * player yet, and lays out the whole window from scratch.
+     */
+    private void redrawView() {
+        Camera camera = getCamera();
+        camera.setWorldSize(mGame.getWidth(), mGame.getHeight());
+        int player = mGame.getPlayerIndex();
+        if (player != EntityStore.NONE) {
+            camera.centerOn(mGame.getSurvivors().getX(player), mGame.getSurvivors().getY(player));
+        } else {
+            camera.centerOn(mGame.getLevel().getStartX(), mGame.getLevel().getStartY());
+        }
+        updateWalls();
+        rebuildStaticLayer();
+        redrawAllTiles();
+        if (mSurface == null) {
+            // A surface loop redraws its next frame whole anyway
+            invalidateTiles();
+        }
     }
 
-	private void fireWeapon(Coordinate head, int zombiecount) 
-	{
-		//Fire Weapon
-		if(Player.getSelectedWeapon().getTurnsUntilNextShot() == 0)
-		{
-			if(Player.getSelectedWeapon().getAmmo() > 0)
-			{
-				if(Player.getSelectedWeapon().Fire())
-				{
-			        for (int Zombieindex = 0; Zombieindex < zombiecount; Zombieindex++) 
-			        {
-			        	Coordinate zombieCoordinate = mZombieList.get(Zombieindex);
-			        	
-				    	double xDistance = zombieCoordinate.x - head.x;
-				    	double yDistance = zombieCoordinate.y - head.y;
-				    	if((-Player.getSelectedWeapon().getRange() < xDistance && xDistance < Player.getSelectedWeapon().getRange()) && (-Player.getSelectedWeapon().getRange() < yDistance && yDistance < Player.getSelectedWeapon().getRange()))
-				    	{
-				    		zombieCoordinate.x = 0;
-							zombieCoordinate.y = 0;
-							break;
-				    	}
-			        }
-				}
-			}
-			else
-			{
-				Player.getSelectedWeapon().Reload();
-				//TODO Reload Weapon
-			}
-		}
-		else
-		{
-			Player.getSelectedWeapon().setTurnsUntilNextShot(Player.getSelectedWeapon().getTurnsUntilNextShot() - 1);
-		}
-	}
+    /**
+     * Sets every entity tile in the camera's window from scratch. Ticks only
+     * touch the tiles that changed, so this is needed whenever the grid, the
+     * window or the whole game state is replaced. It looks up each tile of
+     * the window, so it costs the same however big the world and the horde.
+     */
+    private void redrawAllTiles() {
+        Camera camera = getCamera();
+        int right = camera.getX() + camera.getColumns();
+        int bottom = camera.getY() + camera.getRows();
+        for (int x = camera.getX(); x < right; x++) {
+            for (int y = camera.getY(); y < bottom; y++) {
+                refreshTile(x, y);
+            }
+        }
+    }
 
     /**
-     * Simple class containing two integer values and a comparison function.
-     * There's probably something I should use instead, but this was quick and
-     * easy to build.
+     * Sets the tile at x/y to whatever is standing there now: survivors on
+     * top, then zombies. Walls live in the static layer underneath.
      * 
+     * @param x
+     * @param y
      */
-    private class Coordinate {
-        public int x;
-        public int y;
-
-        public Coordinate(int newX, int newY) {
-            x = newX;
-            y = newY;
+    private void refreshTile(int x, int y) {
+        if (mGame.getSurvivors().getGrid().at(x, y) != -1) {
+            setTile(YELLOW_STAR, x, y);
+        } else if (mGame.getZombies().getGrid().at(x, y) != -1) {
+            setTile(RED_STAR, x, y);
+        } else {
+            setTile(0, x, y);
         }
+    }
 
-        public boolean equals(Coordinate other) {
-            if (x == other.x && y == other.y) {
-                return true;
+    /**
+     * Lays out the walls inside the camera's window in the static layer. They
+     * only change with the level or the window, so this runs when the view is
+     * sized, a game starts or the camera scrolls rather than every tick.
+     * 
+     */
+    private void updateWalls() {
+        GameTimings timings = getTimings();
+        long start = timings != null ? System.nanoTime() : 0;
+        clearStaticTiles();
+        Level level = mGame.getLevel();
+        Camera camera = getCamera();
+        int right = Math.min(camera.getX() + mXTileCount, level.getWidth());
+        int bottom = Math.min(camera.getY() + mYTileCount, level.getHeight());
+        for (int x = camera.getX(); x < right; x++) {
+            for (int y = camera.getY(); y < bottom; y++) {
+                // Every kind of wall is drawn the same for now
+                if (level.getTile(x, y) != Level.FLOOR) {
+                    setStaticTile(GREEN_STAR, x, y);
+                }
             }
-            return false;
         }
-
-        @Override
-        public String toString() {
-            return "Coordinate: [" + x + "," + y + "]";
+        if (timings != null) {
+            timings.record(GameTimings.WALLS, System.nanoTime() - start);
         }
     }
     
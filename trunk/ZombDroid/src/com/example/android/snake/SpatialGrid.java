@@ -0,0 +1,345 @@
+package com.example.android.snake;
+
+/**
+ * SpatialGrid: buckets entity handles by the tile they stand on, so the game
+ * can ask who is standing on a tile, or who is near one, without walking the
+ * whole horde.
+ *
+ * Tiles are grouped into square buckets of BUCKET_SIZE tiles a side. Each
+ * bucket holds an intrusive doubly linked list of handles, so inserting,
+ * moving and removing a handle never allocates and never walks a list.
+ *
+ */
+public class SpatialGrid {
+
+    /**
+     * Buckets are 1 << BUCKET_SHIFT tiles on each side.
+     */
+    private static final int BUCKET_SHIFT = 2;
+    private static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+
+    private static final int NONE = -1;
+
+    /**
+     * Ways of measuring distance for nearest(): CHEBYSHEV is the larger of the
+     * x and y distances (a square range), EUCLIDEAN the straight-line one (a
+     * round range).
+     */
+    public static final int CHEBYSHEV = 0;
+    public static final int EUCLIDEAN = 1;
+
+    private int mWidth;
+    private int mHeight;
+    private int mBucketsX;
+    private int mBucketsY;
+
+    /**
+     * mBucketHead: first handle in each bucket, or NONE if the bucket is empty
+     */
+    private int[] mBucketHead = new int[0];
+
+    /**
+     * mNext/mPrev: links of the bucket list each handle belongs to.
+     * mCell: tile (y * mWidth + x) each handle stands on, or NONE if the handle
+     * is not in the grid.
+     */
+    private int[] mNext = new int[0];
+    private int[] mPrev = new int[0];
+    private int[] mCell = new int[0];
+
+    /**
+     * mNearestDistance: distances of the handles nearest() has found so far
+     */
+    private int[] mNearestDistance = new int[8];
+
+    /**
+     * Resizes the grid to cover a width x height tile area. All handles are
+     * dropped.
+     *
+     * @param width
+     * @param height
+     */
+    public void resize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mBucketsX = (width + BUCKET_SIZE - 1) >> BUCKET_SHIFT;
+        mBucketsY = (height + BUCKET_SIZE - 1) >> BUCKET_SHIFT;
+        int buckets = mBucketsX * mBucketsY;
+        if (mBucketHead.length < buckets) {
+            mBucketHead = new int[buckets];
+        }
+        clear();
+    }
+
+    /**
+     * Drops every handle, keeping the current dimensions.
+     */
+    public void clear() {
+        int buckets = mBucketsX * mBucketsY;
+        for (int index = 0; index < buckets; index++) {
+            mBucketHead[index] = NONE;
+        }
+        for (int index = 0; index < mCell.length; index++) {
+            mCell[index] = NONE;
+        }
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Adds a handle standing on x/y. Positions outside the grid are not
+     * tracked.
+     *
+     * @param id a non-negative handle chosen by the caller
+     * @param x
+     * @param y
+     */
+    public void insert(int id, int x, int y) {
+        ensureCapacity(id + 1);
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            mCell[id] = NONE;
+            return;
+        }
+        mCell[id] = y * mWidth + x;
+        link(id, bucketOf(x, y));
+    }
+
+    /**
+     * Removes a handle from the grid. Does nothing if it is not tracked.
+     *
+     * @param id
+     */
+    public void remove(int id) {
+        if (id >= mCell.length || mCell[id] == NONE) {
+            return;
+        }
+        int cell = mCell[id];
+        unlink(id, bucketOf(cell % mWidth, cell / mWidth));
+        mCell[id] = NONE;
+    }
+
+    /**
+     * Moves a handle to x/y. Only touches the bucket lists if the handle
+     * crosses a bucket boundary.
+     *
+     * @param id
+     * @param x
+     * @param y
+     */
+    public void move(int id, int x, int y) {
+        if (id >= mCell.length || mCell[id] == NONE
+                || x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            remove(id);
+            insert(id, x, y);
+            return;
+        }
+        int cell = mCell[id];
+        int oldBucket = bucketOf(cell % mWidth, cell / mWidth);
+        int newBucket = bucketOf(x, y);
+        if (oldBucket != newBucket) {
+            unlink(id, oldBucket);
+            link(id, newBucket);
+        }
+        mCell[id] = y * mWidth + x;
+    }
+
+    /**
+     * Finds a handle standing exactly on x/y.
+     *
+     * @param x
+     * @param y
+     * @return a handle on that tile, or -1 if the tile is empty
+     */
+    public int at(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            return NONE;
+        }
+        int cell = y * mWidth + x;
+        for (int id = mBucketHead[bucketOf(x, y)]; id != NONE; id = mNext[id]) {
+            if (mCell[id] == cell) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Collects the handles within range tiles of x/y on both axes (the square
+     * of side 2 * range + 1 centred on x/y). Only the buckets overlapping that
+     * square are visited.
+     *
+     * @param x
+     * @param y
+     * @param range
+     * @param out receives up to out.length handles, in no particular order
+     * @return the number of handles found, which may exceed out.length
+     */
+    public int query(int x, int y, int range, int[] out) {
+        int minX = Math.max(0, x - range);
+        int minY = Math.max(0, y - range);
+        int maxX = Math.min(mWidth - 1, x + range);
+        int maxY = Math.min(mHeight - 1, y + range);
+        if (minX > maxX || minY > maxY) {
+            return 0;
+        }
+
+        int found = 0;
+        for (int by = minY >> BUCKET_SHIFT; by <= maxY >> BUCKET_SHIFT; by++) {
+            for (int bx = minX >> BUCKET_SHIFT; bx <= maxX >> BUCKET_SHIFT; bx++) {
+                for (int id = mBucketHead[by * mBucketsX + bx]; id != NONE; id = mNext[id]) {
+                    int cx = mCell[id] % mWidth;
+                    int cy = mCell[id] / mWidth;
+                    if (cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+                        if (found < out.length) {
+                            out[found] = id;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the handles closest to x/y within range, nearest first. Buckets
+     * are searched in rings outward from x/y, and the search stops as soon as
+     * no further ring can hold anything closer than what has been found, so
+     * the cost depends on how crowded the area is rather than on the size of
+     * the horde.
+     *
+     * @param x
+     * @param y
+     * @param range furthest distance to look, in tiles
+     * @param metric CHEBYSHEV or EUCLIDEAN
+     * @param wanted how many handles to find at most
+     * @param out receives the handles, nearest first, and must hold at least
+     * wanted. Handles at the same distance are ordered by handle.
+     * @return the number of handles put in out
+     */
+    public int nearest(int x, int y, int range, int metric, int wanted, int[] out) {
+        if (range < 0 || wanted == 0 || mWidth == 0 || mHeight == 0) {
+            return 0;
+        }
+        if (mNearestDistance.length < wanted) {
+            mNearestDistance = new int[wanted];
+        }
+        int limit = metric == EUCLIDEAN ? range * range : range;
+
+        int centerX = Math.max(0, Math.min(mBucketsX - 1, x >> BUCKET_SHIFT));
+        int centerY = Math.max(0, Math.min(mBucketsY - 1, y >> BUCKET_SHIFT));
+        int maxRing = Math.max(Math.max(centerX, mBucketsX - 1 - centerX),
+                Math.max(centerY, mBucketsY - 1 - centerY));
+
+        int found = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Nothing in this ring is closer than this on either axis
+            int closest = ring == 0 ? 0 : (ring - 1) * BUCKET_SIZE + 1;
+            if (metric == EUCLIDEAN) {
+                closest *= closest;
+            }
+            if (closest > limit || (found == wanted && closest > mNearestDistance[found - 1])) {
+                break;
+            }
+
+            for (int by = centerY - ring; by <= centerY + ring; by++) {
+                if (by < 0 || by >= mBucketsY) {
+                    continue;
+                }
+                boolean edgeRow = by == centerY - ring || by == centerY + ring;
+                int stepX = edgeRow ? 1 : 2 * ring;
+                for (int bx = centerX - ring; bx <= centerX + ring; bx += Math.max(1, stepX)) {
+                    if (bx < 0 || bx >= mBucketsX) {
+                        continue;
+                    }
+                    for (int id = mBucketHead[by * mBucketsX + bx]; id != NONE; id = mNext[id]) {
+                        int dx = Math.abs(mCell[id] % mWidth - x);
+                        int dy = Math.abs(mCell[id] / mWidth - y);
+                        int distance = metric == EUCLIDEAN ? dx * dx + dy * dy : Math.max(dx, dy);
+                        if (distance <= limit) {
+                            found = offerNearest(id, distance, wanted, out, found);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Inserts a handle into the sorted results of nearest(), dropping the
+     * furthest one if they are full.
+     *
+     * @return the new number of results
+     */
+    private int offerNearest(int id, int distance, int wanted, int[] out, int found) {
+        int position = found;
+        while (position > 0 && (mNearestDistance[position - 1] > distance
+                || (mNearestDistance[position - 1] == distance && out[position - 1] > id))) {
+            position--;
+        }
+        if (position == wanted) {
+            return found;
+        }
+        int last = found == wanted ? wanted - 1 : found;
+        for (int index = last; index > position; index--) {
+            out[index] = out[index - 1];
+            mNearestDistance[index] = mNearestDistance[index - 1];
+        }
+        out[position] = id;
+        mNearestDistance[position] = distance;
+        return found == wanted ? found : found + 1;
+    }
+
+    private int bucketOf(int x, int y) {
+        return (y >> BUCKET_SHIFT) * mBucketsX + (x >> BUCKET_SHIFT);
+    }
+
+    private void link(int id, int bucket) {
+        int head = mBucketHead[bucket];
+        mPrev[id] = NONE;
+        mNext[id] = head;
+        if (head != NONE) {
+            mPrev[head] = id;
+        }
+        mBucketHead[bucket] = id;
+    }
+
+    private void unlink(int id, int bucket) {
+        int prev = mPrev[id];
+        int next = mNext[id];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mBucketHead[bucket] = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mCell.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mCell.length * 2);
+        int[] next = new int[newCapacity];
+        int[] prev = new int[newCapacity];
+        int[] cell = new int[newCapacity];
+        System.arraycopy(mNext, 0, next, 0, mNext.length);
+        System.arraycopy(mPrev, 0, prev, 0, mPrev.length);
+        System.arraycopy(mCell, 0, cell, 0, mCell.length);
+        for (int index = mCell.length; index < newCapacity; index++) {
+            cell[index] = NONE;
+        }
+        mNext = next;
+        mPrev = prev;
+        mCell = cell;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android.snake;
+
+import java.util.Arrays;
+
+/**
+ * TileRenderer: draws a grid of tiles into a framebuffer of ARGB pixels in
+ * plain Java, so a whole frame reaches the screen in one blit instead of a
+ * draw call per tile, and so it can be timed on a plain JVM.
+ *
+ * Every tile is kept in one atlas, a tile after another, each flattened over
+ * the background colour so its rows can be copied straight into the frame
+ * with System.arraycopy(). A tile row of the frame is worked out once, as the
+ * atlas offset of every tile along it, and then copied tileSize times. Only
+ * a cell holding both a static and an entity tile is blended pixel by pixel,
+ * the entity tile's own ARGB over the static tile's atlas pixels.
+ *
+ * The frame covers the whole view, and the grid is drawn at an offset into
+ * it. The margins around the grid are only filled when the frame is resized.
+ *
+ */
+public class TileRenderer {
+
+    private final int mTileSize;
+    private final int mTilePixels;
+    private int mBackground = 0xff000000;
+
+    /**
+     * mAtlas: every tile over the background, mTilePixels ints each
+     * mRaw: every tile's own ARGB, in the same layout
+     * mLoaded: whether a tile has been set; unset tiles draw as background
+     */
+    private int[] mAtlas = new int[0];
+    private int[] mRaw = new int[0];
+    private boolean[] mLoaded = new boolean[0];
+
+    /**
+     * mPixels: the frame, mWidth x mHeight, row by row
+     * mRowOffsets: scratch space, the atlas offset of each tile in a row, or
+     * -1 for an empty tile and -2 for one that needs blending
+     */
+    private int[] mPixels = new int[0];
+    private int mWidth;
+    private int mHeight;
+    private int[] mRowOffsets = new int[0];
+
+    /**
+     * @param tileSize width and height of a tile in pixels
+     */
+    public TileRenderer(int tileSize) {
+        mTileSize = tileSize;
+        mTilePixels = tileSize * tileSize;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * Makes room for tilecount tiles, forgetting the old ones.
+     *
+     * @param tilecount
+     */
+    public void resetTiles(int tilecount) {
+        mAtlas = new int[tilecount * mTilePixels];
+        mRaw = new int[tilecount * mTilePixels];
+        mLoaded = new boolean[tilecount];
+    }
+
+    /**
+     * Puts a tile in the atlas.
+     *
+     * @param key the tile's index in the grids
+     * @param argb tileSize x tileSize pixels, row by row
+     */
+    public void setTile(int key, int[] argb) {
+        System.arraycopy(argb, 0, mRaw, key * mTilePixels, mTilePixels);
+        mLoaded[key] = true;
+        flatten(key);
+    }
+
+    /**
+     * Sets the colour of empty tiles and margins, and what tiles are
+     * flattened over. Call resize() after it to refill the margins.
+     *
+     * @param argb an opaque colour
+     */
+    public void setBackground(int argb) {
+        mBackground = argb;
+        for (int key = 0; key < mLoaded.length; key++) {
+            if (mLoaded[key]) {
+                flatten(key);
+            }
+        }
+    }
+
+    /**
+     * Sizes the frame and fills it with the background.
+     *
+     * @param width in pixels
+     * @param height
+     */
+    public void resize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        if (mPixels.length < width * height) {
+            mPixels = new int[width * height];
+        }
+        Arrays.fill(mPixels, 0, width * height, mBackground);
+    }
+
+    /**
+     * @return the frame, getWidth() pixels a row
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Draws the tiles from minX/minY to maxX/maxY, inclusive, into the frame,
+     * with tile 0/0 at xOffset/yOffset pixels. An entity tile is drawn over
+     * the static tile of its cell, and neither is drawn in a cell fog can't
+     * see, except for static tiles, which always are. Tile 0 is empty.
+     *
+     * @param staticGrid static tile of each cell, [x][y]
+     * @param tileGrid entity tile of each cell, [x][y]
+     * @param fog what can be seen, or null for everything
+     * @param originX the tile fog calls x/y that the grids call 0/0, when the
+     * grids are a window onto a bigger world
+     * @param originY
+     * @param xOffset
+     * @param yOffset
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     */
+    public void compose(int[][] staticGrid, int[][] tileGrid, FieldOfView fog, int originX,
+            int originY, int xOffset, int yOffset, int minX, int minY, int maxX, int maxY) {
+        int size = mTileSize;
+        int columns = maxX - minX + 1;
+        if (columns <= 0 || maxY < minY) {
+            return;
+        }
+        if (mRowOffsets.length < columns) {
+            mRowOffsets = new int[columns];
+        }
+        int[] offsets = mRowOffsets;
+        int[] atlas = mAtlas;
+        int[] pixels = mPixels;
+        int stride = mWidth;
+        int background = mBackground;
+
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int tile = tileGrid[x][y];
+                if (tile > 0 && fog != null && !fog.isVisible(originX + x, originY + y)) {
+                    tile = 0;
+                }
+                int under = staticGrid[x][y];
+                int offset = -1;
+                if (tile > 0 && under > 0) {
+                    offset = -2;
+                } else if (tile > 0) {
+                    offset = loaded(tile) ? tile * mTilePixels : -1;
+                } else if (under > 0) {
+                    offset = loaded(under) ? under * mTilePixels : -1;
+                }
+                offsets[x - minX] = offset;
+            }
+
+            int top = (yOffset + y * size) * stride + xOffset + minX * size;
+            for (int row = 0; row < size; row++) {
+                int pixel = top + row * stride;
+                int source = row * size;
+                for (int column = 0; column < columns; column++) {
+                    int offset = offsets[column];
+                    if (offset >= 0) {
+                        System.arraycopy(atlas, offset + source, pixels, pixel, size);
+                    } else if (offset == -1) {
+                        Arrays.fill(pixels, pixel, pixel + size, background);
+                    } else {
+                        blendRow(staticGrid[minX + column][y], tileGrid[minX + column][y], row,
+                                pixel);
+                    }
+                    pixel += size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws one row of an entity tile over the same row of a static tile,
+     * blending the same way flatten() does.
+     */
+    private void blendRow(int under, int tile, int row, int pixel) {
+        int source = row * mTileSize;
+        boolean underLoaded = loaded(under);
+        boolean tileLoaded = loaded(tile);
+        int underOffset = under * mTilePixels + source;
+        int tileOffset = tile * mTilePixels + source;
+        for (int column = 0; column < mTileSize; column++) {
+            int back = underLoaded ? mAtlas[underOffset + column] : mBackground;
+            int argb = tileLoaded ? mRaw[tileOffset + column] : 0;
+            mPixels[pixel + column] = over(argb, back);
+        }
+    }
+
+    /**
+     * @return argb drawn over the opaque colour back
+     */
+    private static int over(int argb, int back) {
+        int alpha = argb >>> 24;
+        int red = ((argb >> 16) & 0xff) * alpha + ((back >> 16) & 0xff) * (255 - alpha);
+        int green = ((argb >> 8) & 0xff) * alpha + ((back >> 8) & 0xff) * (255 - alpha);
+        int blue = (argb & 0xff) * alpha + (back & 0xff) * (255 - alpha);
+        return 0xff000000 | (red / 255) << 16 | (green / 255) << 8 | (blue / 255);
+    }
+
+    private boolean loaded(int key) {
+        return key < mLoaded.length && mLoaded[key];
+    }
+
+    /**
+     * Works out a tile's atlas pixels from its ARGB, blended over the
+     * background.
+     */
+    private void flatten(int key) {
+        int base = key * mTilePixels;
+        for (int index = base; index < base + mTilePixels; index++) {
+            mAtlas[index] = over(mRaw[index], mBackground);
+        }
+    }
+}
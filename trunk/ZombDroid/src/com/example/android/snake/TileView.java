@@ -20,7 +20,9 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.view.View;
@@ -30,6 +32,10 @@ import android.view.View;
  * TileView: a View-variant designed for handling arrays of "icons" or other
  * drawables.
  * 
+ * Tiles are set in world coordinates, and the view shows the window of the
+ * world its Camera is on, so the world can be any size. Only the tiles
+ * inside the window are stored or drawn.
+ * 
  */
 public class TileView extends View {
 
@@ -60,7 +66,66 @@ public class TileView extends View {
      */
     private int[][] mTileGrid;
 
+    /**
+     * Tiles whose index changed since the last call to invalidateTiles(), as
+     * y * mXTileCount + x. mTileDirty flags the same tiles so each one is only
+     * queued once.
+     */
+    private int[] mDirtyTiles;
+    private int mDirtyCount;
+    private boolean[] mTileDirty;
+
+    /**
+     * Tiles that never move (walls, terrain) are kept apart from the entity
+     * tiles in mTileGrid. mStaticGrid holds their indexes and mStaticLayer is
+     * the whole static layer rasterized into one bitmap, so it costs a single
+     * draw call per frame however many tiles it holds. mStaticCanvas draws
+     * into mStaticLayer, and is made along with it so that redrawing the
+     * layer while scrolling doesn't allocate. mStaticLayerChanged is set when
+     * the layer has been redrawn and the view not yet invalidated for it.
+     */
+    private int[][] mStaticGrid;
+    private Bitmap mStaticLayer;
+    private Canvas mStaticCanvas;
+    private boolean mStaticLayerChanged;
+
     private final Paint mPaint = new Paint();
+    private final Rect mClip = new Rect();
+
+    /**
+     * mTimings: where drawTiles() records how long it took, and what the
+     * overlay shows; null when timing is off.
+     * mOverlayText/mOverlayChars: scratch space for the overlay's lines, so
+     * drawing it doesn't allocate.
+     */
+    private GameTimings mTimings;
+    private final Paint mOverlayPaint = new Paint();
+    private final Paint mOverlayBackground = new Paint();
+    private final StringBuilder mOverlayText = new StringBuilder();
+    private char[] mOverlayChars = new char[64];
+
+    private static final int OVERLAY_TEXT_SIZE = 12;
+
+    /**
+     * mFog: tiles it can't see are left out when drawing, or null to draw
+     * every tile
+     * mFogVersion: the version of mFog the view was last invalidated for
+     */
+    private FieldOfView mFog;
+    private int mFogVersion;
+
+    /**
+     * mRenderer: when set, frames are composed from a tile atlas in plain
+     * Java and drawn in one blit, instead of a draw call per tile
+     * mTilePixels: scratch space for copying a tile bitmap into the atlas
+     */
+    private TileRenderer mRenderer;
+    private int[] mTilePixels;
+
+    /**
+     * mCamera: which window of the world the grid holds
+     */
+    private final Camera mCamera = new Camera();
 
     public TileView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
@@ -93,6 +158,9 @@ public class TileView extends View {
     
     public void resetTiles(int tilecount) {
     	mTileArray = new Bitmap[tilecount];
+    	if (mRenderer != null) {
+    	    mRenderer.resetTiles(tilecount);
+    	}
     }
 
 
@@ -103,8 +171,21 @@ public class TileView extends View {
 
         mXOffset = ((w - (mTileSize * mXTileCount)) / 2);
         mYOffset = ((h - (mTileSize * mYTileCount)) / 2);
+        mCamera.setViewSize(mXTileCount, mYTileCount);
 
         mTileGrid = new int[mXTileCount][mYTileCount];
+        mStaticGrid = new int[mXTileCount][mYTileCount];
+        if (mStaticLayer != null) {
+            mStaticLayer.recycle();
+        }
+        mStaticLayer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        mStaticCanvas = new Canvas(mStaticLayer);
+        mDirtyTiles = new int[mXTileCount * mYTileCount];
+        mTileDirty = new boolean[mXTileCount * mYTileCount];
+        mDirtyCount = 0;
+        if (mRenderer != null) {
+            mRenderer.resize(w, h);
+        }
         clearTiles();
     }
 
@@ -122,6 +203,50 @@ public class TileView extends View {
         tile.draw(canvas);
         
         mTileArray[key] = bitmap;
+        if (mRenderer != null) {
+            loadRendererTile(key);
+        }
+    }
+
+    /**
+     * Switches between drawing every tile with its own draw call and
+     * composing whole frames in a TileRenderer, which is drawn with a single
+     * blit. Tiles already loaded are carried over.
+     * 
+     * @param software
+     */
+    public void setSoftwareRendering(boolean software) {
+        if (!software) {
+            mRenderer = null;
+            invalidate();
+            return;
+        }
+        if (mRenderer != null) {
+            return;
+        }
+        mRenderer = new TileRenderer(mTileSize);
+        if (mTileArray != null) {
+            mRenderer.resetTiles(mTileArray.length);
+            for (int key = 0; key < mTileArray.length; key++) {
+                if (mTileArray[key] != null) {
+                    loadRendererTile(key);
+                }
+            }
+        }
+        mRenderer.resize(getWidth(), getHeight());
+        invalidate();
+    }
+
+    public boolean isSoftwareRendering() {
+        return mRenderer != null;
+    }
+
+    private void loadRendererTile(int key) {
+        if (mTilePixels == null || mTilePixels.length != mTileSize * mTileSize) {
+            mTilePixels = new int[mTileSize * mTileSize];
+        }
+        mTileArray[key].getPixels(mTilePixels, 0, mTileSize, 0, 0, mTileSize, mTileSize);
+        mRenderer.setTile(key, mTilePixels);
     }
 
     /**
@@ -131,31 +256,243 @@ public class TileView extends View {
     public void clearTiles() {
         for (int x = 0; x < mXTileCount; x++) {
             for (int y = 0; y < mYTileCount; y++) {
-                setTile(0, x, y);
+                setViewTile(0, x, y);
+            }
+        }
+    }
+
+    /**
+     * @return the camera choosing which part of the world is shown. Move it
+     * and then set the tiles of the new window.
+     */
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    /**
+     * Sets a tile in the static layer, underneath the tiles set with setTile().
+     * Nothing is drawn until rebuildStaticLayer() is called, so a whole level
+     * can be laid out at once. Tiles outside the camera's window are ignored.
+     * 
+     * @param tileindex
+     * @param x world tile
+     * @param y
+     */
+    public void setStaticTile(int tileindex, int x, int y) {
+        x -= mCamera.getX();
+        y -= mCamera.getY();
+        if (x < 0 || y < 0 || x >= mXTileCount || y >= mYTileCount) {
+            return;
+        }
+        mStaticGrid[x][y] = tileindex;
+    }
+
+    /**
+     * Resets all static tiles to 0 (empty). Call rebuildStaticLayer() to show
+     * the change.
+     */
+    public void clearStaticTiles() {
+        for (int x = 0; x < mXTileCount; x++) {
+            for (int y = 0; y < mYTileCount; y++) {
+                mStaticGrid[x][y] = 0;
             }
         }
     }
 
+    /**
+     * Rasterizes the static tiles into the static layer bitmap. Call this once
+     * the level has been laid out with setStaticTile(). The view isn't
+     * invalidated here, since a surface loop may call this off the UI thread;
+     * the next invalidateTiles() redraws the whole view instead.
+     */
+    public void rebuildStaticLayer() {
+        mStaticLayer.eraseColor(0);
+        Canvas canvas = mStaticCanvas;
+        for (int x = 0; x < mXTileCount; x += 1) {
+            for (int y = 0; y < mYTileCount; y += 1) {
+                if (mStaticGrid[x][y] > 0) {
+                    canvas.drawBitmap(mTileArray[mStaticGrid[x][y]],
+                            mXOffset + x * mTileSize,
+                            mYOffset + y * mTileSize,
+                            mPaint);
+                }
+            }
+        }
+        mStaticLayerChanged = true;
+    }
+
     /**
      * Used to indicate that a particular tile (set with loadTile and referenced
      * by an integer) should be drawn at the given x/y coordinates during the
-     * next invalidate/draw cycle.
+     * next invalidate/draw cycle. Tiles that actually change are remembered
+     * until the next call to invalidateTiles(), so a game only needs to set
+     * the tiles that moved. Tiles outside the camera's window are ignored.
      * 
      * @param tileindex
-     * @param x
+     * @param x world tile
      * @param y
      */
     public void setTile(int tileindex, int x, int y) {
+        setViewTile(tileindex, x - mCamera.getX(), y - mCamera.getY());
+    }
+
+    private void setViewTile(int tileindex, int x, int y) {
+        if (x < 0 || y < 0 || x >= mXTileCount || y >= mYTileCount
+                || mTileGrid[x][y] == tileindex) {
+            return;
+        }
         mTileGrid[x][y] = tileindex;
+
+        int cell = y * mXTileCount + x;
+        if (!mTileDirty[cell]) {
+            mTileDirty[cell] = true;
+            mDirtyTiles[mDirtyCount++] = cell;
+        }
+    }
+
+    /**
+     * Invalidates just the tiles changed by setTile() since the last call, and
+     * forgets them. If most of the grid or the static layer changed the whole
+     * view is invalidated instead. Only call this on the UI thread.
+     */
+    public void invalidateTiles() {
+        FieldOfView fog = mFog;
+        boolean fogMoved = fog != null && fog.getVersion() != mFogVersion;
+        if (mDirtyCount == 0 && !fogMoved && !mStaticLayerChanged) {
+            return;
+        }
+        if (fogMoved) {
+            mFogVersion = fog.getVersion();
+        }
+        // The timing overlay changes every frame, and a new field of view
+        // uncovers tiles all over, so redraw it all
+        boolean wholeView = mDirtyCount > mDirtyTiles.length / 4 || mTimings != null
+                || fogMoved || mStaticLayerChanged;
+        mStaticLayerChanged = false;
+        if (wholeView) {
+            invalidate();
+        }
+        for (int index = 0; index < mDirtyCount; index++) {
+            int cell = mDirtyTiles[index];
+            mTileDirty[cell] = false;
+            if (!wholeView) {
+                int left = mXOffset + (cell % mXTileCount) * mTileSize;
+                int top = mYOffset + (cell / mXTileCount) * mTileSize;
+                invalidate(left, top, left + mTileSize, top + mTileSize);
+            }
+        }
+        mDirtyCount = 0;
+    }
+
+    /**
+     * Forgets the tiles changed since the last call to invalidateTiles()
+     * without invalidating anything, for hosts that redraw the whole grid
+     * themselves.
+     */
+    public void discardDirtyTiles() {
+        mStaticLayerChanged = false;
+        for (int index = 0; index < mDirtyCount; index++) {
+            mTileDirty[mDirtyTiles[index]] = false;
+        }
+        mDirtyCount = 0;
     }
 
 
     @Override
     public void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        for (int x = 0; x < mXTileCount; x += 1) {
-            for (int y = 0; y < mYTileCount; y += 1) {
-                if (mTileGrid[x][y] > 0) {
+        drawTiles(canvas);
+    }
+
+    /**
+     * Records how long every draw takes into timings, and shows a summary of
+     * them over the tiles.
+     * 
+     * @param timings the timings to record into and show, or null to stop
+     */
+    public void setTimings(GameTimings timings) {
+        mTimings = timings;
+        mOverlayPaint.setColor(Color.WHITE);
+        mOverlayPaint.setTextSize(OVERLAY_TEXT_SIZE);
+        mOverlayPaint.setAntiAlias(true);
+        mOverlayBackground.setColor(Color.BLACK);
+        mOverlayBackground.setAlpha(160);
+        invalidate();
+    }
+
+    public GameTimings getTimings() {
+        return mTimings;
+    }
+
+    /**
+     * Hides the tiles set with setTile() wherever fog can't see. The static
+     * layer is always drawn, so the walls stay on the map.
+     * 
+     * @param fog what can be seen, in tile coordinates, or null to show
+     * everything
+     */
+    public void setFog(FieldOfView fog) {
+        mFog = fog;
+        invalidate();
+    }
+
+    public FieldOfView getFog() {
+        return mFog;
+    }
+
+    /**
+     * Draws the static layer and then every tile inside the canvas clip that
+     * isn't in the fog, and the timing overlay if there is one. With software
+     * rendering on, the tiles inside the clip are composed into the
+     * renderer's frame and that part of it is drawn in one go.
+     * 
+     * @param canvas
+     */
+    public void drawTiles(Canvas canvas) {
+        GameTimings timings = mTimings;
+        long start = timings != null ? System.nanoTime() : 0;
+
+        TileRenderer renderer = mRenderer;
+        if (mStaticLayer != null && renderer == null) {
+            canvas.drawBitmap(mStaticLayer, 0, 0, mPaint);
+        }
+
+        // Only walk the tiles inside the area being redrawn
+        int minX = 0;
+        int minY = 0;
+        int maxX = mXTileCount - 1;
+        int maxY = mYTileCount - 1;
+        if (canvas.getClipBounds(mClip)) {
+            minX = Math.max(minX, (mClip.left - mXOffset) / mTileSize);
+            minY = Math.max(minY, (mClip.top - mYOffset) / mTileSize);
+            maxX = Math.min(maxX, (mClip.right - 1 - mXOffset) / mTileSize);
+            maxY = Math.min(maxY, (mClip.bottom - 1 - mYOffset) / mTileSize);
+        }
+
+        FieldOfView fog = mFog;
+        if (renderer != null) {
+            if (minX <= maxX && minY <= maxY) {
+                renderer.compose(mStaticGrid, mTileGrid, fog, mCamera.getX(), mCamera.getY(),
+                        mXOffset, mYOffset, minX, minY, maxX, maxY);
+                int left = mXOffset + minX * mTileSize;
+                int top = mYOffset + minY * mTileSize;
+                int stride = renderer.getWidth();
+                canvas.drawBitmap(renderer.getPixels(), top * stride + left, stride, left, top,
+                        (maxX - minX + 1) * mTileSize, (maxY - minY + 1) * mTileSize,
+                        false, mPaint);
+            }
+            if (timings != null) {
+                timings.record(GameTimings.DRAW, System.nanoTime() - start);
+                drawOverlay(canvas, timings);
+            }
+            return;
+        }
+        int cameraX = mCamera.getX();
+        int cameraY = mCamera.getY();
+        for (int x = minX; x <= maxX; x += 1) {
+            for (int y = minY; y <= maxY; y += 1) {
+                if (mTileGrid[x][y] > 0
+                        && (fog == null || fog.isVisible(cameraX + x, cameraY + y))) {
                     canvas.drawBitmap(mTileArray[mTileGrid[x][y]], 
                     		mXOffset + x * mTileSize,
                     		mYOffset + y * mTileSize,
@@ -164,6 +501,61 @@ public class TileView extends View {
             }
         }
 
+        if (timings != null) {
+            timings.record(GameTimings.DRAW, System.nanoTime() - start);
+            drawOverlay(canvas, timings);
+        }
+    }
+
+    /**
+     * Draws p50/p99 tick and draw times, the horde size and missed frames,
+     * and p50/p99 input latency in the top left corner.
+     */
+    private void drawOverlay(Canvas canvas, GameTimings timings) {
+        int lineHeight = OVERLAY_TEXT_SIZE + 2;
+        canvas.drawRect(0, 0, OVERLAY_TEXT_SIZE * 12, lineHeight * 4 + 4, mOverlayBackground);
+
+        TimingHistogram tick = timings.getHistogram(GameTimings.TICK);
+        mOverlayText.setLength(0);
+        mOverlayText.append("tick p50 ");
+        appendMicros(tick.getPercentile(0.5));
+        mOverlayText.append(" p99 ");
+        appendMicros(tick.getPercentile(0.99));
+        drawOverlayLine(canvas, lineHeight);
+
+        TimingHistogram draw = timings.getHistogram(GameTimings.DRAW);
+        mOverlayText.setLength(0);
+        mOverlayText.append("draw p50 ");
+        appendMicros(draw.getPercentile(0.5));
+        mOverlayText.append(" p99 ");
+        appendMicros(draw.getPercentile(0.99));
+        drawOverlayLine(canvas, lineHeight * 2);
+
+        mOverlayText.setLength(0);
+        mOverlayText.append("horde ").append(timings.getHordeSize());
+        mOverlayText.append(" missed ").append(timings.getMissedFrames());
+        drawOverlayLine(canvas, lineHeight * 3);
+
+        TimingHistogram input = timings.getHistogram(GameTimings.INPUT);
+        mOverlayText.setLength(0);
+        mOverlayText.append("input p50 ");
+        appendMicros(input.getPercentile(0.5));
+        mOverlayText.append(" p99 ");
+        appendMicros(input.getPercentile(0.99));
+        drawOverlayLine(canvas, lineHeight * 4);
+    }
+
+    private void appendMicros(long nanos) {
+        mOverlayText.append(nanos / 1000).append("us");
+    }
+
+    private void drawOverlayLine(Canvas canvas, int y) {
+        int length = mOverlayText.length();
+        if (mOverlayChars.length < length) {
+            mOverlayChars = new char[length * 2];
+        }
+        mOverlayText.getChars(0, length, mOverlayChars, 0);
+        canvas.drawText(mOverlayChars, 0, length, 2, y, mOverlayPaint);
     }
 
 }
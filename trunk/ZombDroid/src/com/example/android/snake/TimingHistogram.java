@@ -0,0 +1,139 @@
+package com.example.android.snake;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TimingHistogram: counts how long something took, in nanoseconds, in a
+ * fixed set of buckets. Recording is one atomic increment and never locks or
+ * allocates, so the game thread and the drawing thread can both record while
+ * another thread reads percentiles.
+ *
+ * Buckets are log-linear: every power of two is split into SUB_BUCKETS
+ * equal parts, so a percentile is never off by more than an eighth of its
+ * value, from nanoseconds up to hours.
+ *
+ */
+public class TimingHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Values below this each get a bucket of their own.
+     */
+    private static final int LINEAR = SUB_BUCKETS * 2;
+
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicIntegerArray mCounts = new AtomicIntegerArray(BUCKETS);
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Counts one thing that took the given time.
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mCounts.incrementAndGet(bucketOf(nanos));
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Forgets everything recorded. Records made at the same time may or may
+     * not survive.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            mCounts.set(bucket, 0);
+        }
+        mMax.set(0);
+    }
+
+    /**
+     * @return the number of times recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            count += mCounts.get(bucket);
+        }
+        return count;
+    }
+
+    /**
+     * @return the longest time recorded
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the time at or under which that fraction of the records fall,
+     * rounded up to the end of its bucket, or 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mCounts.get(bucket);
+            if (seen >= wanted) {
+                return Math.min(bucketEnd(bucket), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Writes the non-empty buckets, one "start count" pair per line.
+     *
+     * @param out
+     */
+    public void writeBuckets(PrintWriter out) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            int count = mCounts.get(bucket);
+            if (count != 0) {
+                out.print(bucketStart(bucket));
+                out.print(' ');
+                out.println(count);
+            }
+        }
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketStart(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) sub << (exponent - SUB_BITS));
+    }
+
+    static long bucketEnd(int bucket) {
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return bucketStart(bucket + 1) - 1;
+    }
+}
@@ -2,8 +2,6 @@ package com.example.android.snake;
 
 import java.util.Random;
 
-import android.R.string;
-
 public class Weapon 
 {
 	Random oRandom = new Random();
@@ -17,12 +15,12 @@ public class Weapon
 		Range = range;
 	}
 	
-	private string Name;
-	public string getName() 
+	private String Name;
+	public String getName() 
 	{
 		return Name;
 	}
-	public void setName(string name) {
+	public void setName(String name) {
 		Name = name;
 	}
 
@@ -88,6 +86,19 @@ public class Weapon
 		CriticalHit = criticalHit;
 	}
 
+	/**
+	 * How many zombies one shot can hit, nearest first. 1 for a pistol, more
+	 * for a shotgun or anything that goes through its target.
+	 */
+	private int Targets = 1;
+	
+	public int getTargets() {
+		return Targets;
+	}
+	public void setTargets(int targets) {
+		Targets = targets;
+	}
+
 	private int ClipSize;
 	
 	public int getClipSize() {
@@ -139,6 +150,13 @@ public class Weapon
 	public void setCurrentAmmoType(int currentAmmoType) {
 		CurrentAmmoType = currentAmmoType;
 	}
+	/**
+	 * Sets where the weapon gets its luck from, so a seeded game plays out
+	 * the same every time.
+	 */
+	public void setRandom(Random random) {
+		oRandom = random;
+	}
 	public boolean Fire()
 	{
 		int RandomNumber = oRandom.nextInt(100);
@@ -0,0 +1,792 @@
+package com.example.android.snake;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ZombieGame: the rules of the game, with no Android dependencies. It owns the
+ * arena and two EntityStores, the survivors (just the player for now) and the
+ * horde, and moves everything forward one tick at a time through step().
+ * SnakeView only feeds it input and draws the result, so the game can also be
+ * run on a plain JVM as fast as step() can be called.
+ *
+ * Every tile whose contents change during a step is recorded, so a renderer
+ * only has to redraw those.
+ *
+ */
+public class ZombieGame {
+
+    /**
+     * Current mode of the game: READY to run, RUNNING, or you have already
+     * lost. static final ints are used instead of an enum for performance
+     * reasons.
+     */
+    public static final int PAUSE = 0;
+    public static final int READY = 1;
+    public static final int RUNNING = 2;
+    public static final int LOSE = 3;
+    public static final int WIN = 4;
+
+    /**
+     * Directions the player can be headed.
+     */
+    public static final int NORTH = 1;
+    public static final int SOUTH = 2;
+    public static final int EAST = 3;
+    public static final int WEST = 4;
+
+    /**
+     * Number of zombies a new game starts with.
+     */
+    public static final int START_ZOMBIES = 24;
+
+    /**
+     * Health every zombie spawns with: a pistol shot kills from up to five
+     * tiles away, and only wounds from further.
+     */
+    public static final int ZOMBIE_HEALTH = 60;
+
+    /**
+     * Zombies chase the player from up to this many steps away, if the
+     * player can see them.
+     */
+    public static final int AGGRO_RADIUS = 6;
+
+    /**
+     * How far the player can see, in tiles. Enough to take in every tile
+     * within AGGRO_RADIUS steps, diagonals included.
+     */
+    public static final int SIGHT_RADIUS = 10;
+
+    /**
+     * Zombies spawn inside the wall, and no nearer the bottom than this, so
+     * the player starts with some room.
+     */
+    private static final int SPAWN_MARGIN_BOTTOM = 7;
+
+    private int mMode = READY;
+    private int mDirection = NORTH;
+
+    /**
+     * mLevel: the layout of the arena
+     * mWidth/mHeight: size of the arena in tiles, walls included.
+     */
+    private Level mLevel = Level.border(0, 0);
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * mScore: used to track the number of zombies killed mMoveDelay: number of
+     * milliseconds between moves.
+     */
+    private long mScore = 0;
+    private long mMoveDelay = 600;
+
+    /**
+     * mSurvivors: the armed humans, the player among them
+     * mPlayer: id of the player in mSurvivors
+     * mZombies: the horde, indexed by tile for collision, targeting and
+     * spawning lookups.
+     * mCombat: works out who shoots whom each tick
+     */
+    private EntityStore mSurvivors = new EntityStore(EntityStore.WEAPONS);
+    private int mPlayer = EntityStore.NONE;
+    private EntityStore mZombies = new EntityStore(EntityStore.FREE_CELLS);
+    private final Combat mCombat = new Combat();
+
+    /**
+     * mLoadout: the weapon new games start with, or null for the pistol
+     */
+    private Weapon mLoadout;
+
+    /**
+     * mFlowField: walking distances to the player, shared by the whole horde
+     */
+    private FlowField mFlowField = new FlowField(AGGRO_RADIUS);
+
+    /**
+     * mSight: what the player can see, recomputed when they move
+     */
+    private final FieldOfView mSight = new FieldOfView(SIGHT_RADIUS);
+
+    /**
+     * mActive: indices of the zombies near enough to the player to move this
+     * tick, in increasing order, mActiveCount of them. Everyone else is
+     * dormant and costs nothing.
+     * mProposed: where each active zombie wants to move this tick, as
+     * y * mWidth + x, or NO_MOVE, in the same order as mActive
+     * mAwake: ids of the zombies active last tick, mAwakeCount of them, to
+     * put back to sleep if they have fallen behind
+     */
+    private static final int NO_MOVE = -1;
+    private int[] mActive = new int[64];
+    private int mActiveCount;
+    private int[] mProposed = new int[64];
+    private int[] mAwake = new int[64];
+    private int mAwakeCount;
+
+    /**
+     * Everyone needs a little randomness in their life. Each part of the game
+     * draws from its own stream, so that seeding them all through setSeed()
+     * replays a game exactly: mRandom places zombies, mWeaponRandom decides
+     * whether shots hit.
+     */
+    private Random mRandom = new Random();
+    private Random mWeaponRandom = new Random();
+
+    /**
+     * mTick: number of steps run since the game started
+     */
+    private long mTick;
+
+    /**
+     * mTimings: where step() records how long each phase took, or null
+     */
+    private GameTimings mTimings;
+
+    /**
+     * Tiles (y * mWidth + x) changed since the start of the last step. A tile
+     * may appear more than once.
+     */
+    private int[] mChangedTiles = new int[64];
+    private int mChangedCount;
+
+    /**
+     * Makes the arena a plain width x height one walled all around, see
+     * Level.border(), and re-indexes the horde against it. The game itself
+     * is left alone.
+     *
+     * @param width
+     * @param height
+     */
+    public void resize(int width, int height) {
+        setLevel(Level.border(width, height));
+    }
+
+    /**
+     * Changes the layout of the arena and re-indexes the horde against it.
+     * The game itself is left alone.
+     *
+     * @param level
+     */
+    public void setLevel(Level level) {
+        mLevel = level;
+        mWidth = level.getWidth();
+        mHeight = level.getHeight();
+        mZombies.resize(mWidth, mHeight);
+        mSurvivors.resize(mWidth, mHeight);
+        FreeCellIndex freeCells = mZombies.getFreeCells();
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                if (level.isWall(x, y)) {
+                    freeCells.block(x, y);
+                }
+            }
+        }
+        freeCells.setArea(1, 1, mWidth - 2, mHeight - SPAWN_MARGIN_BOTTOM);
+        mFlowField.invalidate();
+        mSight.invalidate();
+    }
+
+    public Level getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Sets up a new game on a plain width x height arena, see newGame(Level).
+     *
+     * @param width
+     * @param height
+     */
+    public void newGame(int width, int height) {
+        newGame(Level.border(width, height));
+    }
+
+    /**
+     * Sets up a new game on a level: a fresh player with a pistol, or the
+     * loadout if one is set, at the level's start and START_ZOMBIES zombies.
+     *
+     * @param level
+     */
+    public void newGame(Level level) {
+        mSurvivors.clear();
+        mZombies.clear();
+        mAwakeCount = 0;
+        setLevel(level);
+        mChangedCount = 0;
+
+        Human Player = new Human();
+        Weapon Pistol = new Weapon();
+        Pistol.setName("Pistol");
+        Pistol.setPower(80);
+        Pistol.setPowerCurve(5);
+        Pistol.setRange(8);
+        Pistol.setAmmo(8);
+        Pistol.setAmmoInClip(2);
+        Pistol.setClipSize(5);
+        Pistol.setTurnsUntilNextShot(0);
+        Pistol.setFireRatePerTurn(10);
+        Pistol.setAccuracy(80);
+        Player.setSelectedWeapon(Pistol);
+        if (mLoadout != null) {
+            Player.setSelectedWeapon(mLoadout);
+        }
+
+        int player = mSurvivors.add(level.getStartX(), level.getStartY());
+        mSurvivors.setHealth(player, Player.getHealth());
+        mSurvivors.arm(player, Player.getSelectedWeapon());
+        mPlayer = mSurvivors.getId(player);
+        mDirection = NORTH;
+
+        spawnZombies(START_ZOMBIES);
+
+        mMoveDelay = 300;
+        mScore = 0;
+        mTick = 0;
+    }
+
+    /**
+     * Sets the weapon the player starts new games with. The weapon is copied
+     * at the start of each game, so one can be shared by many games.
+     *
+     * @param loadout null for the usual pistol
+     */
+    public void setLoadout(Weapon loadout) {
+        mLoadout = loadout;
+    }
+
+    public Weapon getLoadout() {
+        return mLoadout;
+    }
+
+    /**
+     * Seeds every random stream the game uses from one seed. Seeding before
+     * newGame() and then feeding step() the same directions plays out the
+     * same game every time.
+     *
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        Random master = new Random(seed);
+        mRandom.setSeed(master.nextLong());
+        mWeaponRandom.setSeed(master.nextLong());
+    }
+
+    /**
+     * Moves the game forward one tick with the player heading in the given
+     * direction. Does nothing unless the game is RUNNING.
+     *
+     * @param direction NORTH, SOUTH, EAST or WEST
+     */
+    public void step(int direction) {
+        mChangedCount = 0;
+        if (mMode != RUNNING) {
+            return;
+        }
+        mDirection = direction;
+        if (mTimings == null) {
+            updateZombies();
+            updatePlayer();
+            updateCombat();
+        } else {
+            long start = System.nanoTime();
+            updateZombies();
+            long zombiesDone = System.nanoTime();
+            updatePlayer();
+            long playerDone = System.nanoTime();
+            updateCombat();
+            long end = System.nanoTime();
+            mTimings.record(GameTimings.ZOMBIES, zombiesDone - start);
+            mTimings.record(GameTimings.PLAYER, playerDone - zombiesDone);
+            mTimings.record(GameTimings.COMBAT, end - playerDone);
+            mTimings.record(GameTimings.TICK, end - start);
+            mTimings.setHordeSize(mZombies.size());
+        }
+        mTick++;
+    }
+
+    /**
+     * Starts or stops timing the phases of every step().
+     *
+     * @param timings where to record, or null to stop
+     */
+    public void setTimings(GameTimings timings) {
+        mTimings = timings;
+    }
+
+    public GameTimings getTimings() {
+        return mTimings;
+    }
+
+    /**
+     * @return the number of steps run since the game started; pausing
+     * doesn't count
+     */
+    public long getTick() {
+        return mTick;
+    }
+
+    /**
+     * Hashes everything that decides how the game plays on: mode, score,
+     * tick, where the survivors and the horde are, in order, and the
+     * player's health and weapon.
+     * Two runs of the same game end with the same hash.
+     *
+     * @return the hash
+     */
+    public long stateHash() {
+        long hash = HASH_OFFSET;
+        hash = hash(hash, mMode);
+        hash = hash(hash, mDirection);
+        hash = hash(hash, mScore);
+        hash = hash(hash, mTick);
+        hash = hash(hash, mWidth);
+        hash = hash(hash, mHeight);
+        int survivorcount = mSurvivors.size();
+        hash = hash(hash, survivorcount);
+        for (int index = 0; index < survivorcount; index++) {
+            hash = hash(hash, mSurvivors.getX(index));
+            hash = hash(hash, mSurvivors.getY(index));
+        }
+        int zombiecount = mZombies.size();
+        hash = hash(hash, zombiecount);
+        for (int index = 0; index < zombiecount; index++) {
+            hash = hash(hash, mZombies.getX(index));
+            hash = hash(hash, mZombies.getY(index));
+        }
+        int player = mSurvivors.indexOf(mPlayer);
+        if (player != EntityStore.NONE) {
+            hash = hash(hash, mSurvivors.getHealth(player));
+            if (mSurvivors.isArmed(player)) {
+                hash = hash(hash, mSurvivors.getAmmo(player));
+                hash = hash(hash, mSurvivors.getAmmoInClip(player));
+                hash = hash(hash, mSurvivors.getCooldown(player));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 64-bit FNV-1a, a byte at a time.
+     */
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private static long hash(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= HASH_PRIME;
+        }
+        return hash;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Changes the mode of the game. Winning clears the horde.
+     *
+     * @param newMode
+     */
+    public void setMode(int newMode) {
+        mMode = newMode;
+        if (newMode == WIN) {
+            int zombiecount = mZombies.size();
+            for (int index = 0; index < zombiecount; index++) {
+                markChanged(mZombies.getX(index), mZombies.getY(index));
+            }
+            mZombies.clear();
+        }
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getDirection() {
+        return mDirection;
+    }
+
+    public void setDirection(int direction) {
+        mDirection = direction;
+    }
+
+    public long getScore() {
+        return mScore;
+    }
+
+    public void setScore(long score) {
+        mScore = score;
+    }
+
+    public long getMoveDelay() {
+        return mMoveDelay;
+    }
+
+    public void setMoveDelay(long moveDelay) {
+        mMoveDelay = moveDelay;
+    }
+
+    /**
+     * @return what the player could see at the end of the last step
+     */
+    public FieldOfView getFieldOfView() {
+        return mSight;
+    }
+
+    public EntityStore getSurvivors() {
+        return mSurvivors;
+    }
+
+    public EntityStore getZombies() {
+        return mZombies;
+    }
+
+    /**
+     * @return the id of the player in getSurvivors()
+     */
+    public int getPlayerId() {
+        return mPlayer;
+    }
+
+    /**
+     * Makes a survivor the player, e.g. after restoring the survivors.
+     *
+     * @param id
+     */
+    public void setPlayerId(int id) {
+        mPlayer = id;
+    }
+
+    /**
+     * @return the index of the player in getSurvivors(), or EntityStore.NONE
+     * if there is no game
+     */
+    public int getPlayerIndex() {
+        return mSurvivors.indexOf(mPlayer);
+    }
+
+    public int getPlayerX() {
+        return mSurvivors.getX(mSurvivors.indexOf(mPlayer));
+    }
+
+    public int getPlayerY() {
+        return mSurvivors.getY(mSurvivors.indexOf(mPlayer));
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return whether x/y is a wall, or off the arena
+     */
+    public boolean isWall(int x, int y) {
+        return mLevel.isWall(x, y);
+    }
+
+    /**
+     * @return the number of tiles changed by the last step
+     */
+    public int getChangedCount() {
+        return mChangedCount;
+    }
+
+    /**
+     * @param index
+     * @return a tile changed by the last step, as y * getWidth() + x
+     */
+    public int getChangedTile(int index) {
+        return mChangedTiles[index];
+    }
+
+    /**
+     * Forgets the changed tiles. step() does this itself; callers running the
+     * phases of a tick on their own should call it between them.
+     */
+    public void clearChangedTiles() {
+        mChangedCount = 0;
+    }
+
+    private void markChanged(int x, int y) {
+        if (mChangedCount == mChangedTiles.length) {
+            int[] changed = new int[mChangedTiles.length * 2];
+            System.arraycopy(mChangedTiles, 0, changed, 0, mChangedCount);
+            mChangedTiles = changed;
+        }
+        mChangedTiles[mChangedCount++] = y * mWidth + x;
+    }
+
+    /**
+     * Spawns up to count zombies on random tiles of the spawn area that
+     * nothing is standing on, every free tile equally likely. Each zombie
+     * costs the same however full the arena is, and spawning stops when
+     * there is no room left rather than looking forever.
+     *
+     * @param count
+     * @return the number of zombies spawned
+     */
+    public int spawnZombies(int count) {
+        FreeCellIndex freeCells = mZombies.getFreeCells();
+        // The survivors' tiles aren't free either, just for the spawn
+        int survivorcount = mSurvivors.size();
+        for (int index = 0; index < survivorcount; index++) {
+            freeCells.occupy(mSurvivors.getX(index), mSurvivors.getY(index));
+        }
+
+        int spawned = 0;
+        while (spawned < count) {
+            int cell = freeCells.pickFree(mRandom);
+            if (cell == -1) {
+                break;
+            }
+            int newX = cell % mWidth;
+            int newY = cell / mWidth;
+            int zombie = mZombies.add(newX, newY);
+            mZombies.setHealth(zombie, ZOMBIE_HEALTH);
+            markChanged(newX, newY);
+            spawned++;
+        }
+
+        for (int index = 0; index < survivorcount; index++) {
+            freeCells.vacate(mSurvivors.getX(index), mSurvivors.getY(index));
+        }
+        return spawned;
+    }
+
+    /**
+     * Spawns one zombie, see spawnZombies().
+     */
+    void addRandomZombie() {
+        spawnZombies(1);
+    }
+
+    /**
+     * Moves every zombie within AGGRO_RADIUS steps of the player, on a tile
+     * the player can see, one step along the flow field towards it. Zombies
+     * behind walls don't notice the player however close they are.
+     *
+     * Zombies further away than that can't move, so they are left dormant:
+     * only the zombies in the spatial grid buckets the player's radius
+     * reaches are looked at, and a dormant zombie wakes up as soon as the
+     * player gets that close, without costing anything until then.
+     *
+     * The active zombies are updated in two passes. First each works out
+     * where it wants to go from the state at the start of the tick. Then the
+     * moves are applied one by one in index order. Zombies are allowed to
+     * share a tile, so when several want the same tile they all get it.
+     *
+     * Each zombie's AI state says which it did: AI_CHASING if it moved,
+     * AI_WAITING if it was active but stayed put, AI_DORMANT if it wasn't
+     * active.
+     *
+     */
+    void updateZombies() {
+        int headX = getPlayerX();
+        int headY = getPlayerY();
+        mFlowField.rebuild(this, headX, headY);
+        mSight.update(mLevel, headX, headY);
+
+        // Everyone awake last tick goes back to sleep unless they are found
+        // again. Kills since then may have moved them, so go by id
+        for (int awake = 0; awake < mAwakeCount; awake++) {
+            int Zombieindex = mZombies.indexOf(mAwake[awake]);
+            if (Zombieindex != EntityStore.NONE) {
+                mZombies.setAiState(Zombieindex, EntityStore.AI_DORMANT);
+            }
+        }
+
+        findActiveZombies(headX, headY);
+        int activecount = mActiveCount;
+        if (mProposed.length < activecount) {
+            mProposed = new int[Math.max(activecount, mProposed.length * 2)];
+            mAwake = new int[mProposed.length];
+        }
+        proposeMoves(0, activecount, headX, headY);
+
+        for (int active = 0; active < activecount; active++) {
+            int target = mProposed[active];
+            int Zombieindex = mActive[active];
+            mAwake[active] = mZombies.getId(Zombieindex);
+            if (target == NO_MOVE) {
+                mZombies.setAiState(Zombieindex, EntityStore.AI_WAITING);
+                continue;
+            }
+            mZombies.setAiState(Zombieindex, EntityStore.AI_CHASING);
+            markChanged(mZombies.getX(Zombieindex), mZombies.getY(Zombieindex));
+            mZombies.move(Zombieindex, target % mWidth, target / mWidth);
+            markChanged(target % mWidth, target / mWidth);
+        }
+        mAwakeCount = activecount;
+    }
+
+    /**
+     * Collects into mActive the zombies within AGGRO_RADIUS tiles of x/y on
+     * both axes that the player can see, in index order.
+     */
+    private void findActiveZombies(int x, int y) {
+        SpatialGrid grid = mZombies.getGrid();
+        int found = grid.query(x, y, AGGRO_RADIUS, mActive);
+        if (found > mActive.length) {
+            mActive = new int[Math.max(found, mActive.length * 2)];
+            found = grid.query(x, y, AGGRO_RADIUS, mActive);
+        }
+        int seen = 0;
+        for (int index = 0; index < found; index++) {
+            int zombie = mActive[index];
+            if (mSight.isVisible(mZombies.getX(zombie), mZombies.getY(zombie))) {
+                mActive[seen++] = zombie;
+            }
+        }
+        Arrays.sort(mActive, 0, seen);
+        mActiveCount = seen;
+    }
+
+    /**
+     * @return the number of zombies near enough to the player to have been
+     * moved by the last tick
+     */
+    public int getActiveCount() {
+        return mActiveCount;
+    }
+
+    /**
+     * Works out where the active zombies from up to (but not including) to
+     * want to move, into mProposed. Only reads the game.
+     *
+     * @param from position in mActive
+     * @param to
+     * @param headX where the player is
+     * @param headY
+     */
+    void proposeMoves(int from, int to, int headX, int headY) {
+        for (int active = from; active < to; active++) {
+            int Zombieindex = mActive[active];
+            int zombieX = mZombies.getX(Zombieindex);
+            int zombieY = mZombies.getY(Zombieindex);
+            mProposed[active] = NO_MOVE;
+            int distance = mFlowField.distance(zombieX, zombieY);
+            if (distance == FlowField.UNREACHED || distance == 0) {
+                continue;
+            }
+
+            // Like the old straight-line chase, prefer closing in along the
+            // axis the player is further away on, and only go another way
+            // when a wall is in the way
+            int xDistance = headX - zombieX;
+            int yDistance = headY - zombieY;
+            int stepX = xDistance > 0 ? 1 : -1;
+            int stepY = yDistance > 0 ? 1 : -1;
+            int newX = zombieX;
+            int newY = zombieY;
+            boolean horizontalFirst = Math.abs(xDistance) > Math.abs(yDistance);
+            if (horizontalFirst && xDistance != 0
+                    && mFlowField.distance(zombieX + stepX, zombieY) < distance) {
+                newX = zombieX + stepX;
+            } else if (yDistance != 0
+                    && mFlowField.distance(zombieX, zombieY + stepY) < distance) {
+                newY = zombieY + stepY;
+            } else if (xDistance != 0
+                    && mFlowField.distance(zombieX + stepX, zombieY) < distance) {
+                newX = zombieX + stepX;
+            } else if (mFlowField.distance(zombieX, zombieY - 1) < distance) {
+                newY = zombieY - 1;
+            } else if (mFlowField.distance(zombieX, zombieY + 1) < distance) {
+                newY = zombieY + 1;
+            } else if (mFlowField.distance(zombieX + 1, zombieY) < distance) {
+                newX = zombieX + 1;
+            } else if (mFlowField.distance(zombieX - 1, zombieY) < distance) {
+                newX = zombieX - 1;
+            } else {
+                continue;
+            }
+            mProposed[active] = newY * mWidth + newX;
+        }
+    }
+
+    /**
+     * Figure out which way the player is going, see if he's run into anything
+     * (the walls or a zombie). If he's not going to die, we then add to the
+     * front and subtract from the rear in order to simulate motion.
+     *
+     */
+    void updatePlayer() {
+
+        // grab the Player
+        int player = mSurvivors.indexOf(mPlayer);
+        int headX = mSurvivors.getX(player);
+        int headY = mSurvivors.getY(player);
+        int newX = headX;
+        int newY = headY;
+
+        switch (mDirection) {
+        case EAST: {
+            newX = headX + 1;
+            break;
+        }
+        case WEST: {
+            newX = headX - 1;
+            break;
+        }
+        case NORTH: {
+            newY = headY - 1;
+            break;
+        }
+        case SOUTH: {
+            newY = headY + 1;
+            break;
+        }
+        }
+
+        //if the Player reaches the top of the screen
+        if(newY < 1)
+        {
+        	setMode(WIN);
+        }
+
+        // Collision detection against the level's walls
+        if (mLevel.isWall(newX, newY))
+        {
+        	//player is trying to move into a wall so dont move them
+        }
+        else
+        {
+            //Move player
+            markChanged(headX, headY);
+            mSurvivors.move(player, newX, newY);
+            markChanged(newX, newY);
+        }
+
+        // Check For collisions with zombies
+        if (mZombies.getGrid().at(newX, newY) != -1) {
+            setMode(LOSE);
+        }
+
+        // See from the new tile, for the view and the zombies' next move
+        player = mSurvivors.indexOf(mPlayer);
+        mSight.update(mLevel, mSurvivors.getX(player), mSurvivors.getY(player));
+
+    }
+
+	/**
+	 * Every armed survivor fires from where they now stand, all at once, see
+	 * Combat, and whoever is killed is removed. Removing a zombie moves the
+	 * last one into its slot, so they are removed highest index first to keep
+	 * the rest valid.
+	 */
+	void updateCombat()
+	{
+		mCombat.collect(mSurvivors, mWeaponRandom);
+		mCombat.resolve(mZombies, mLevel, mWeaponRandom);
+		int dead = mCombat.applyDamage(mZombies);
+		mScore += dead;
+		for (int index = 0; index < dead; index++) {
+			int zombie = mCombat.getDead(index);
+			markChanged(mZombies.getX(zombie), mZombies.getY(zombie));
+			mZombies.remove(zombie);
+		}
+	}
+}
@@ -0,0 +1,518 @@
+package com.example.android.snake;
+
+import android.os.Debug;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks on the game engine that don't need an activity.
+ */
+public class ZombieGameTest extends TestCase {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 30;
+
+    private static final int WARMUP_TICKS = 500;
+    private static final int MEASURED_TICKS = 2000;
+
+    private ZombieGame mGame;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mGame = new ZombieGame();
+        startGame();
+    }
+
+    /**
+     * Once the game has warmed up, a tick that stays in RUNNING must not
+     * allocate anything, or long games end up stalling on the garbage
+     * collector.
+     */
+    public void testSteadyStateTickDoesNotAllocate() {
+        for (int tick = 0; tick < WARMUP_TICKS; tick++) {
+            tick();
+        }
+
+        Debug.startAllocCounting();
+        try {
+            int measured = 0;
+            int allocated = 0;
+            while (measured < MEASURED_TICKS) {
+                int before = Debug.getThreadAllocSize();
+                boolean running = tick();
+                int after = Debug.getThreadAllocSize();
+                if (running) {
+                    allocated += after - before;
+                    measured++;
+                }
+            }
+            assertEquals("bytes allocated over " + MEASURED_TICKS + " ticks", 0, allocated);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /**
+     * A snapshot must bring back the arena, the horde and its health, and
+     * the survivors and their weapons exactly as they were.
+     */
+    public void testSnapshotRoundTrip() {
+        for (int tick = 0; tick < 50; tick++) {
+            tick();
+        }
+        EntityStore survivors = mGame.getSurvivors();
+        int player = mGame.getPlayerIndex();
+        survivors.setTargets(player, 3);
+        EntityStore zombies = mGame.getZombies();
+        zombies.setHealth(zombies.size() - 1, 7);
+
+        GameSnapshot snapshot = new GameSnapshot();
+        byte[] data = snapshot.save(mGame);
+        ZombieGame restored = new ZombieGame();
+        snapshot.restore(restored, data);
+
+        assertEquals(mGame.getWidth(), restored.getWidth());
+        assertEquals(mGame.getHeight(), restored.getHeight());
+        assertEquals(mGame.getMode(), restored.getMode());
+        assertEquals(mGame.getDirection(), restored.getDirection());
+        assertEquals(mGame.getScore(), restored.getScore());
+        assertEquals(mGame.getMoveDelay(), restored.getMoveDelay());
+        assertEquals(mGame.getPlayerX(), restored.getPlayerX());
+        assertEquals(mGame.getPlayerY(), restored.getPlayerY());
+
+        EntityStore restoredZombies = restored.getZombies();
+        assertEquals(zombies.size(), restoredZombies.size());
+        for (int index = 0; index < zombies.size(); index++) {
+            assertTrue(restoredZombies.getGrid().at(zombies.getX(index),
+                    zombies.getY(index)) != -1);
+        }
+        int[] health = new int[zombies.size()];
+        int[] restoredHealth = new int[zombies.size()];
+        for (int index = 0; index < zombies.size(); index++) {
+            health[index] = zombies.getHealth(index);
+            restoredHealth[index] = restoredZombies.getHealth(index);
+        }
+        Arrays.sort(health);
+        Arrays.sort(restoredHealth);
+        assertTrue(Arrays.equals(health, restoredHealth));
+
+        EntityStore copies = restored.getSurvivors();
+        int copy = restored.getPlayerIndex();
+        assertTrue(copies.isArmed(copy));
+        assertEquals("Pistol", copies.getWeaponName(copy));
+        assertEquals(survivors.getPower(player), copies.getPower(copy));
+        assertEquals(survivors.getRange(player), copies.getRange(copy));
+        assertEquals(survivors.getAccuracy(player), copies.getAccuracy(copy));
+        assertEquals(survivors.getAmmo(player), copies.getAmmo(copy));
+        assertEquals(survivors.getAmmoInClip(player), copies.getAmmoInClip(copy));
+        assertEquals(survivors.getClipSize(player), copies.getClipSize(copy));
+        assertEquals(survivors.getCooldown(player), copies.getCooldown(copy));
+        assertEquals(3, copies.getTargets(copy));
+        assertEquals(survivors.getHealth(player), copies.getHealth(copy));
+    }
+
+    /**
+     * An entity keeps its id while others around it are removed, and its id
+     * finds it wherever removals have moved it.
+     */
+    public void testEntityIdsSurviveRemoval() {
+        EntityStore zombies = mGame.getZombies();
+        int first = zombies.getId(0);
+        int last = zombies.getId(zombies.size() - 1);
+        int lastX = zombies.getX(zombies.size() - 1);
+        int lastY = zombies.getY(zombies.size() - 1);
+
+        zombies.remove(0);
+        assertEquals(EntityStore.NONE, zombies.indexOf(first));
+        int moved = zombies.indexOf(last);
+        assertEquals(0, moved);
+        assertEquals(last, zombies.getId(moved));
+        assertEquals(lastX, zombies.getX(moved));
+        assertEquals(lastY, zombies.getY(moved));
+        assertEquals(ZombieGame.ZOMBIE_HEALTH, zombies.getHealth(moved));
+
+        int added = zombies.add(1, 1);
+        assertEquals(first, zombies.getId(added));
+        assertEquals(added, zombies.indexOf(first));
+    }
+
+    /**
+     * A seeded game played again from its input log must end in the same
+     * state, including after the log has been written out and read back, and
+     * only on the level it was recorded on.
+     */
+    public void testReplayReproducesGame() throws IOException {
+        InputLog log = new InputLog();
+        long seed = 1234;
+        mGame.setSeed(seed);
+        Level level = Level.border(WIDTH, HEIGHT);
+        level.setTile(5, 5, Level.WALL);
+        log.start(seed, level);
+        mGame.newGame(level);
+        mGame.setMode(ZombieGame.RUNNING);
+
+        Random input = new Random(5678);
+        int direction = ZombieGame.NORTH;
+        while (mGame.getMode() == ZombieGame.RUNNING && mGame.getTick() < 5000) {
+            if (input.nextInt(4) == 0) {
+                direction = 1 + input.nextInt(4);
+            }
+            log.record(mGame.getTick(), direction);
+            mGame.step(direction);
+        }
+        log.finish(mGame.getTick(), mGame.stateHash());
+
+        Replayer replayer = new Replayer();
+        try {
+            replayer.verify(log);
+            fail("replayed on a plain arena");
+        } catch (IllegalArgumentException e) {
+            // the log knows its level
+        }
+        replayer.setLevel(level);
+        assertTrue(replayer.verify(log));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.writeTo(out);
+        InputLog copy = InputLog.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(replayer.verify(copy));
+        assertEquals(mGame.stateHash(), replayer.replay(copy, 0).stateHash());
+    }
+
+    /**
+     * Spawning more zombies than there is room for fills every free tile of
+     * the spawn area once, then stops.
+     */
+    public void testSpawnFillsArenaAndStops() {
+        int room = mGame.getZombies().getFreeCells().getFreeCount();
+        int spawned = mGame.spawnZombies(room + 100);
+        assertEquals(room, spawned);
+        assertEquals(0, mGame.spawnZombies(1));
+
+        EntityStore zombies = mGame.getZombies();
+        boolean[] taken = new boolean[WIDTH * HEIGHT];
+        for (int index = 0; index < zombies.size(); index++) {
+            int cell = zombies.getY(index) * WIDTH + zombies.getX(index);
+            assertFalse("two zombies on one tile", taken[cell]);
+            assertEquals(-1, mGame.getSurvivors().getGrid().at(zombies.getX(index),
+                    zombies.getY(index)));
+            taken[cell] = true;
+        }
+
+        zombies.remove(0);
+        assertEquals(1, mGame.spawnZombies(5));
+    }
+
+    /**
+     * The player can't walk through a level's walls, and a level survives
+     * being written out and read back.
+     */
+    public void testLevelWallsBlockPlayer() throws IOException {
+        Level level = Level.border(WIDTH, HEIGHT);
+        level.setTile(level.getStartX(), level.getStartY() - 1, Level.WALL);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        level.writeTo(out);
+        Level copy = Level.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(WIDTH, copy.getWidth());
+        assertEquals(HEIGHT, copy.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(level.isWall(x, y), copy.isWall(x, y));
+            }
+        }
+
+        mGame.newGame(copy);
+        mGame.getZombies().clear();
+        mGame.setMode(ZombieGame.RUNNING);
+        mGame.step(ZombieGame.NORTH);
+        assertEquals(copy.getStartX(), mGame.getPlayerX());
+        assertEquals(copy.getStartY(), mGame.getPlayerY());
+
+        mGame.step(ZombieGame.WEST);
+        assertEquals(copy.getStartX() - 1, mGame.getPlayerX());
+    }
+
+    /**
+     * Shots don't go through walls, lose power with distance, and only kill
+     * once they have taken all of a zombie's health.
+     */
+    public void testCombatBlockedByWallsAndDamagesHealth() {
+        Level level = Level.border(WIDTH, HEIGHT);
+        int startX = level.getStartX();
+        int startY = level.getStartY();
+        level.setTile(startX - 2, startY, Level.WALL);
+        mGame.newGame(level);
+        EntityStore zombies = mGame.getZombies();
+        zombies.clear();
+        EntityStore survivors = mGame.getSurvivors();
+        int player = mGame.getPlayerIndex();
+        survivors.setAccuracy(player, 100);
+        survivors.setAmmo(player, 100);
+
+        int hidden = zombies.getId(zombies.add(startX - 4, startY));
+        zombies.setHealth(zombies.indexOf(hidden), ZombieGame.ZOMBIE_HEALTH);
+        mGame.updateCombat();
+        assertEquals(ZombieGame.ZOMBIE_HEALTH, zombies.getHealth(zombies.indexOf(hidden)));
+
+        // Seven tiles away the pistol's 80 power is down by 6 * 5 percent
+        int far = zombies.getId(zombies.add(startX, startY - 7));
+        zombies.setHealth(zombies.indexOf(far), ZombieGame.ZOMBIE_HEALTH);
+        survivors.setCooldown(player, 0);
+        mGame.updateCombat();
+        assertEquals(ZombieGame.ZOMBIE_HEALTH - 56, zombies.getHealth(zombies.indexOf(far)));
+        assertEquals(ZombieGame.ZOMBIE_HEALTH, zombies.getHealth(zombies.indexOf(hidden)));
+
+        survivors.setCooldown(player, 0);
+        mGame.updateCombat();
+        assertEquals(EntityStore.NONE, zombies.indexOf(far));
+        assertEquals(1, zombies.size());
+    }
+
+    /**
+     * A zombie standing on the player's own tile has nothing in the way and
+     * gets shot.
+     */
+    public void testCombatHitsZombieOnPlayersTile() {
+        Level level = Level.border(WIDTH, HEIGHT);
+        mGame.newGame(level);
+        EntityStore zombies = mGame.getZombies();
+        zombies.clear();
+        EntityStore survivors = mGame.getSurvivors();
+        int player = mGame.getPlayerIndex();
+        survivors.setAccuracy(player, 100);
+        survivors.setAmmo(player, 100);
+
+        int close = zombies.getId(zombies.add(level.getStartX(), level.getStartY()));
+        zombies.setHealth(zombies.indexOf(close), ZombieGame.ZOMBIE_HEALTH);
+        assertTrue(level.isClear(level.getStartX(), level.getStartY(), level.getStartX(),
+                level.getStartY()));
+        mGame.updateCombat();
+        int index = zombies.indexOf(close);
+        assertTrue(index == EntityStore.NONE
+                || zombies.getHealth(index) < ZombieGame.ZOMBIE_HEALTH);
+    }
+
+    /**
+     * Zombies the player can't see for walls don't come after them, however
+     * close they are, while those in view do.
+     */
+    public void testZombiesBehindWallsStayDormant() {
+        Level level = Level.border(WIDTH, HEIGHT);
+        int startX = level.getStartX();
+        int startY = level.getStartY();
+        for (int x = 1; x < WIDTH - 1; x++) {
+            level.setTile(x, startY - 3, Level.WALL);
+        }
+        mGame.newGame(level);
+        EntityStore zombies = mGame.getZombies();
+        zombies.clear();
+        int hidden = zombies.getId(zombies.add(startX, startY - 5));
+        int seen = zombies.getId(zombies.add(startX - 4, startY));
+        mGame.getSurvivors().setAccuracy(mGame.getPlayerIndex(), 0);
+        mGame.setMode(ZombieGame.RUNNING);
+
+        // Walking into the bottom wall keeps the player where they are
+        mGame.step(ZombieGame.SOUTH);
+        FieldOfView sight = mGame.getFieldOfView();
+        assertTrue(sight.isVisible(startX, startY - 2));
+        assertTrue(sight.isVisible(startX, startY - 3));
+        assertFalse(sight.isVisible(startX, startY - 5));
+
+        assertEquals(startY - 5, zombies.getY(zombies.indexOf(hidden)));
+        assertEquals(EntityStore.AI_DORMANT, zombies.getAiState(zombies.indexOf(hidden)));
+        assertEquals(startX - 3, zombies.getX(zombies.indexOf(seen)));
+        assertEquals(EntityStore.AI_CHASING, zombies.getAiState(zombies.indexOf(seen)));
+    }
+
+    /**
+     * With timings on, every running tick is recorded once per phase, and
+     * percentiles come out in order.
+     */
+    public void testTimingsRecordEveryTick() {
+        GameTimings timings = new GameTimings();
+        mGame.setTimings(timings);
+        int running = 0;
+        for (int tick = 0; tick < 200; tick++) {
+            if (mGame.getMode() == ZombieGame.RUNNING) {
+                running++;
+            }
+            tick();
+        }
+
+        for (int phase = GameTimings.ZOMBIES; phase <= GameTimings.TICK; phase++) {
+            TimingHistogram histogram = timings.getHistogram(phase);
+            assertEquals(running, histogram.getCount());
+            assertTrue(histogram.getPercentile(0.5) <= histogram.getPercentile(0.99));
+            assertTrue(histogram.getPercentile(0.99) <= histogram.getMax());
+        }
+        assertEquals(0, timings.getHistogram(GameTimings.DRAW).getCount());
+        assertEquals(mGame.getZombies().size(), timings.getHordeSize());
+    }
+
+    /**
+     * Presses come out of the input queue in the order they went in, with
+     * their times, none are lost while it has room, and it keeps working as
+     * its indices wrap around the ring.
+     */
+    public void testInputQueueKeepsEveryPress() throws InterruptedException {
+        InputQueue queue = new InputQueue(4);
+        assertEquals(InputQueue.EMPTY, queue.take());
+        assertTrue(queue.offer(ZombieGame.NORTH, 10));
+        assertTrue(queue.offer(ZombieGame.WEST, 20));
+        assertEquals(ZombieGame.NORTH, queue.take());
+        assertEquals(10, queue.getTakenTime());
+        assertEquals(ZombieGame.WEST, queue.take());
+        assertEquals(20, queue.getTakenTime());
+        assertTrue(queue.isEmpty());
+
+        for (int press = 0; press < 4; press++) {
+            assertTrue(queue.offer(ZombieGame.EAST, press));
+        }
+        assertFalse(queue.offer(ZombieGame.SOUTH, 4));
+        queue.clear();
+        assertEquals(0, queue.size());
+
+        // One thread pressing while another takes
+        final InputQueue shared = new InputQueue(8);
+        final int presses = 100000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int press = 0; press < presses; press++) {
+                    while (!shared.offer(1 + press % 4, press)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        producer.start();
+        for (int press = 0; press < presses; press++) {
+            int direction;
+            while ((direction = shared.take()) == InputQueue.EMPTY) {
+                Thread.yield();
+            }
+            assertEquals(1 + press % 4, direction);
+            assertEquals(press, shared.getTakenTime());
+        }
+        producer.join();
+        assertTrue(shared.isEmpty());
+    }
+
+    /**
+     * The software renderer copies each tile into place over the background,
+     * draws entities over static tiles, and leaves out entities in the fog
+     * and the tiles outside the area asked for.
+     */
+    public void testTileRendererComposesGrid() {
+        int size = 2;
+        TileRenderer renderer = new TileRenderer(size);
+        renderer.resetTiles(3);
+        // Tile 1 is opaque red, tile 2 green with a transparent right column
+        renderer.setTile(1, new int[] { 0xffff0000, 0xffff0000, 0xffff0000, 0xffff0000 });
+        renderer.setTile(2, new int[] { 0xff00ff00, 0, 0xff00ff00, 0 });
+        int width = 3 * size + 2;
+        renderer.resize(width, size);
+
+        int[][] walls = new int[3][1];
+        int[][] tiles = new int[3][1];
+        walls[0][0] = 1;
+        walls[1][0] = 1;
+        tiles[1][0] = 2;
+        tiles[2][0] = 2;
+        renderer.compose(walls, tiles, null, 0, 0, 1, 0, 0, 0, 2, 0);
+
+        int[] pixels = renderer.getPixels();
+        int black = 0xff000000;
+        int red = 0xffff0000;
+        int green = 0xff00ff00;
+        int[] expected = { black, red, red, green, red, green, black, black };
+        for (int x = 0; x < width; x++) {
+            assertEquals("pixel " + x, expected[x], pixels[x]);
+            assertEquals("pixel " + x, expected[x], pixels[width + x]);
+        }
+
+        // Only the last tile is redrawn, and the fog hides its entity
+        Level level = Level.border(3, 1);
+        FieldOfView fog = new FieldOfView(1);
+        fog.update(level, 0, 0);
+        tiles[1][0] = 0;
+        renderer.compose(walls, tiles, fog, 0, 0, 1, 0, 2, 0, 2, 0);
+        assertEquals(green, pixels[3]);
+        assertEquals(black, pixels[5]);
+
+        // A half transparent blue entity mixes with the red wall under it
+        renderer.setTile(2, new int[] { 0x800000ff, 0x800000ff, 0x800000ff, 0x800000ff });
+        tiles[0][0] = 2;
+        renderer.compose(walls, tiles, null, 0, 0, 1, 0, 0, 0, 0, 0);
+        assertEquals(0xff7f0080, pixels[1]);
+        assertEquals(0xff7f0080, pixels[width + 2]);
+    }
+
+    /**
+     * The camera only scrolls once its target nears an edge of the window,
+     * never shows past the edge of the world, and shows a world smaller than
+     * the window from its top left.
+     */
+    public void testCameraFollowsWithinWorld() {
+        Camera camera = new Camera();
+        camera.setWorldSize(1000, 1000);
+        camera.setViewSize(20, 40);
+        assertFalse(camera.centerOn(0, 0));
+        assertTrue(camera.centerOn(500, 500));
+        assertEquals(490, camera.getX());
+        assertEquals(480, camera.getY());
+
+        // Anywhere in the middle half of the window leaves it alone
+        assertFalse(camera.follow(495, 490));
+        assertFalse(camera.follow(504, 509));
+        assertTrue(camera.follow(505, 500));
+        assertEquals(491, camera.getX());
+        assertTrue(camera.contains(505, 500));
+
+        assertTrue(camera.follow(999, 999));
+        assertEquals(980, camera.getX());
+        assertEquals(960, camera.getY());
+        assertTrue(camera.contains(999, 999));
+
+        camera.setWorldSize(10, 10);
+        assertEquals(0, camera.getX());
+        assertEquals(0, camera.getY());
+        assertFalse(camera.follow(9, 9));
+    }
+
+    private void startGame() {
+        mGame.newGame(WIDTH, HEIGHT);
+        mGame.setDirection(ZombieGame.EAST);
+        mGame.setMode(ZombieGame.RUNNING);
+    }
+
+    /**
+     * Paces the player east and west along the bottom of the arena, so it
+     * never wins, and starts a new game whenever the last one ended.
+     *
+     * @return true if the game was running before and after the tick
+     */
+    private boolean tick() {
+        if (mGame.getMode() != ZombieGame.RUNNING) {
+            startGame();
+            return false;
+        }
+        int headX = mGame.getPlayerX();
+        int direction = mGame.getDirection();
+        if (headX >= WIDTH - 2) {
+            direction = ZombieGame.WEST;
+        } else if (headX <= 1) {
+            direction = ZombieGame.EAST;
+        }
+        mGame.step(direction);
+        return mGame.getMode() == ZombieGame.RUNNING;
+    }
+}